@@ -0,0 +1,142 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static com.google.common.collect.ImmutableList.builder;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Compares the time taken to deserialize LDPath JSON with
+ * {@link NamedFieldsDeserializer} against the former approach, which built a
+ * Gson engine per message and read through a tree of {@link JsonElement}s.
+ * Run with the JMH GC profiler to compare the memory allocated:
+ *
+ * <pre>
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="NamedFieldsDeserializerBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NamedFieldsDeserializerBenchmark {
+
+    private static final Type TREE_TYPE =
+        new TypeToken<Collection<Map<String, JsonElement>>>() {}.getType();
+
+    private static final NamedFieldsDeserializer deserializer =
+        new NamedFieldsDeserializer();
+
+    /**
+     * The number of fields in the document.
+     */
+    @Param({"50"})
+    public int fields;
+
+    /**
+     * The number of values of each field.
+     */
+    @Param({"5"})
+    public int values;
+
+    private String json;
+
+    /**
+     * Write the document to deserialize.
+     */
+    @Setup
+    public void setUp() {
+        json = json(fields, values);
+    }
+
+    /**
+     * @return the fields read through a tree of {@link JsonElement}s
+     */
+    @Benchmark
+    public NamedFields tree() {
+        final Gson gson = new Gson();
+        final Collection<Map<String, JsonElement>> tree =
+            gson.fromJson(new StringReader(json), TREE_TYPE);
+        final Map<String, Collection<String>> read = new HashMap<>();
+        for (final Map.Entry<String, JsonElement> field : tree.iterator()
+                .next().entrySet()) {
+            final ImmutableList.Builder<String> b = builder();
+            for (final JsonElement value : field.getValue().getAsJsonArray()) {
+                b.add(value.getAsString());
+            }
+            read.put(field.getKey(), b.build());
+        }
+        return new NamedFields(read);
+    }
+
+    /**
+     * @return the fields read token by token
+     * @throws IOException
+     */
+    @Benchmark
+    public NamedFields streaming() throws IOException {
+        try (JsonReader in = new JsonReader(new StringReader(json))) {
+            return deserializer.read(in);
+        }
+    }
+
+    private static String json(final int fields, final int values) {
+        final StringBuilder json = new StringBuilder("[{");
+        for (int f = 0; f < fields; f++) {
+            if (f > 0) {
+                json.append(',');
+            }
+            json.append("\"field").append(f).append("\":[");
+            for (int v = 0; v < values; v++) {
+                if (v > 0) {
+                    json.append(',');
+                }
+                json.append("\"value ").append(v).append(" of field ")
+                        .append(f).append('"');
+            }
+            json.append(']');
+        }
+        return json.append("}]").toString();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static com.hp.hpl.jena.rdf.model.ModelFactory.createDefaultModel;
+import static com.hp.hpl.jena.rdf.model.ResourceFactory.createProperty;
+import static com.hp.hpl.jena.rdf.model.ResourceFactory.createResource;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.jena.riot.RDFDataMgr.parse;
+import static org.apache.jena.riot.RDFDataMgr.read;
+import static org.apache.jena.riot.RDFDataMgr.write;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * Compares the cost of parsing a container's RDF in each {@link RdfFormat},
+ * both into a {@link Model} and through a {@link TripleBuffer}:
+ *
+ * <pre>
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="RdfFormatBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RdfFormatBenchmark {
+
+    private static final String BASE = "http://localhost:8080/rest/container";
+
+    /**
+     * The serialization to parse.
+     */
+    @Param({"N3", "TURTLE", "NTRIPLES", "RDFXML"})
+    public String format;
+
+    /**
+     * The number of children in the container.
+     */
+    @Param({"10000"})
+    public int children;
+
+    private RdfFormat rdfFormat;
+
+    private byte[] payload;
+
+    /**
+     * Serialize the container.
+     */
+    @Setup
+    public void setUp() {
+        rdfFormat = RdfFormat.valueOf(format);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, container(children), rdfFormat.getLang());
+        payload = out.toByteArray();
+    }
+
+    /**
+     * @return the parsed model
+     */
+    @Benchmark
+    public Model model() {
+        final Model model = createDefaultModel();
+        read(model, new ByteArrayInputStream(payload), rdfFormat.getLang());
+        return model;
+    }
+
+    /**
+     * @return the buffer through which the RDF was parsed
+     */
+    @Benchmark
+    public TripleBuffer buffer() {
+        final TripleBuffer buffer = new TripleBuffer(BASE, false);
+        parse(buffer, new ByteArrayInputStream(payload), null, rdfFormat
+                .getLang());
+        return buffer;
+    }
+
+    private static Model container(final int children) {
+        final Model model = createDefaultModel();
+        final Resource container = createResource(BASE);
+        final Property contains =
+            createProperty("http://www.w3.org/ns/ldp#contains");
+        final Property title =
+            createProperty("http://purl.org/dc/elements/1.1/title");
+        model.add(container, title, "A container");
+        for (int i = 0; i < children; i++) {
+            model.add(container, contains, createResource(BASE + "/child" + i));
+        }
+        return model;
+    }
+}
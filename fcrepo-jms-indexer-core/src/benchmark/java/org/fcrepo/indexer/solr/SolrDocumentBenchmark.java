@@ -0,0 +1,142 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer.solr;
+
+import static com.google.common.collect.Maps.transformEntries;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.indexer.solr.SolrIndexer.INDEX_TIME_BOOST;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.fcrepo.indexer.NamedFields;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import com.google.common.collect.Maps.EntryTransformer;
+
+/**
+ * Compares the throughput of the conversion of {@link NamedFields} to
+ * {@link SolrInputDocument}s in {@link SolrIndexer} against the former
+ * conversion, which copied the fields to add an identifier, wrapped them in a
+ * lazy view and logged each value. Each document is read through once, as it
+ * would be when sent to Solr. Run with the JMH GC profiler to compare the
+ * memory allocated:
+ *
+ * <pre>
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="SolrDocumentBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolrDocumentBenchmark {
+
+    private static final Logger LOGGER = getLogger(SolrDocumentBenchmark.class);
+
+    private static final EntryTransformer<String, Collection<String>, SolrInputField> toField =
+        new EntryTransformer<String, Collection<String>, SolrInputField>() {
+
+            @Override
+            public SolrInputField transformEntry(final String key,
+                final Collection<String> input) {
+                final SolrInputField field = new SolrInputField(key);
+                for (final String value : input) {
+                    LOGGER.debug("Adding value: {} to field: {}", value, key);
+                    field.addValue(value, INDEX_TIME_BOOST);
+                }
+                return field;
+            }
+        };
+
+    /**
+     * The shape of the documents: "typical" has 30 fields of 3 values, "wide"
+     * 2000 fields of 20 values.
+     */
+    @Param({"typical", "wide"})
+    public String shape;
+
+    private NamedFields fields;
+
+    /**
+     * Build the fields to convert.
+     */
+    @Setup
+    public void setUp() {
+        fields = "wide".equals(shape) ? fields(2000, 20) : fields(30, 3);
+    }
+
+    /**
+     * @return the number of values in the document
+     */
+    @Benchmark
+    public long view() {
+        final Map<String, Collection<String>> copy = new HashMap<>(fields);
+        copy.put("id", asList("doc"));
+        return read(new SolrInputDocument(transformEntries(copy, toField)));
+    }
+
+    /**
+     * @return the number of values in the document
+     */
+    @Benchmark
+    public long direct() {
+        return read(SolrIndexer.toDocument("doc", fields));
+    }
+
+    private static long read(final SolrInputDocument doc) {
+        long values = 0;
+        for (final SolrInputField field : doc) {
+            for (final Object value : field) {
+                if (value != null) {
+                    values++;
+                }
+            }
+        }
+        return values;
+    }
+
+    private static NamedFields fields(final int fields, final int values) {
+        final NamedFields.Builder b = NamedFields.builder();
+        for (int f = 0; f < fields; f++) {
+            final String[] vs = new String[values];
+            for (int v = 0; v < values; v++) {
+                vs[v] = "value " + v + " of field " + f;
+            }
+            b.field("field" + f, vs);
+        }
+        return b.build();
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Optional extension for {@link Indexer}s that can operate on many resources
+ * in one request to their backend. {@link IndexerGroup} accumulates
+ * operations for such indexers and hands them over in batches.
+ *
+ * @param <Content> the type of content to index
+ */
+public interface BatchIndexer<Content> extends Indexer<Content> {
+
+    /**
+     * Create or update index entries for several objects.
+     *
+     * @param contents content to index, by identifier
+     * @return the results of addition
+     * @throws IOException
+     */
+    public ListenableFuture<?> updateAll(final Map<String, Content> contents)
+        throws IOException;
+
+    /**
+     * Remove several objects from the index.
+     *
+     * @param ids
+     * @return the results of removal
+     * @throws IOException
+     */
+    public ListenableFuture<?> removeAll(final Collection<String> ids)
+        throws IOException;
+
+    /**
+     * Complete any work this indexer has deferred, e.g. by making submitted
+     * batches visible in the index.
+     *
+     * @return the results of flushing
+     * @throws IOException
+     */
+    public ListenableFuture<?> flush() throws IOException;
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Holds repository events for each identifier for a fixed window and then
+ * hands a single operation for that identifier on to a
+ * {@link ResourceEventHandler}. A save in the repository typically fires a
+ * burst of property events against the same node, all of which would
+ * otherwise cause an identical reindex.
+ * <p>
+ * Within a window, any number of updates collapse into one update, and a
+ * removal supersedes any pending update. An update arriving after a pending
+ * removal (i.e. the resource was re-created) releases the removal immediately
+ * and opens a new window, so that ordering is preserved.
+ * <p>
+ * Operations are never run on the thread that offered the event nor on the
+ * timer thread. Each one is queued behind any operation for the same
+ * identifier that is still outstanding and run on a pool of worker threads,
+ * so operations for one identifier are handled one at a time and in the order
+ * they were issued, while different identifiers proceed in parallel.
+ */
+public class EventCoalescer {
+
+    private static final Logger LOGGER = getLogger(EventCoalescer.class);
+
+    private final long window;
+
+    private final ResourceEventHandler handler;
+
+    private final Map<String, Pending> pending = new HashMap<>();
+
+    private final Map<String, Queue<Boolean>> issued = new HashMap<>();
+
+    private final ScheduledExecutorService scheduler =
+        newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("event-coalescer-timer").setDaemon(true)
+                .build());
+
+    private final ExecutorService workers;
+
+    private final AtomicLong eventsReceived = new AtomicLong();
+
+    private final AtomicLong operationsIssued = new AtomicLong();
+
+    /**
+     * The number of worker threads used unless another is given.
+     */
+    public static final int DEFAULT_THREADS = 4;
+
+    /**
+     * @param window the time in milliseconds to hold events for an identifier
+     * @param handler receives the coalesced operations
+     */
+    public EventCoalescer(final long window,
+        final ResourceEventHandler handler) {
+        this(window, handler, DEFAULT_THREADS);
+    }
+
+    /**
+     * @param window the time in milliseconds to hold events for an identifier
+     * @param handler receives the coalesced operations
+     * @param threads the number of threads on which operations are handled
+     */
+    public EventCoalescer(final long window,
+        final ResourceEventHandler handler, final int threads) {
+        this.window = window;
+        this.handler = handler;
+        this.workers =
+            newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                    .setNameFormat("event-coalescer-%d").setDaemon(true)
+                    .build());
+    }
+
+    /**
+     * Record an event for an identifier.
+     *
+     * @param pid
+     * @param removal
+     */
+    public void offer(final String pid, final Boolean removal) {
+        eventsReceived.incrementAndGet();
+        synchronized (pending) {
+            final Pending current = pending.get(pid);
+            if (current == null) {
+                schedule(pid, removal);
+                return;
+            }
+            if (removal || !current.removal) {
+                LOGGER.debug("Coalescing event for: {} into pending {}.",
+                        pid, current.removal ? "removal" : "update");
+                current.removal = current.removal || removal;
+                return;
+            }
+            // the resource was re-created behind a pending removal
+            pending.remove(pid);
+            issue(pid, current.removal);
+            schedule(pid, removal);
+        }
+    }
+
+    private void schedule(final String pid, final Boolean removal) {
+        final Pending p = new Pending(removal);
+        pending.put(pid, p);
+        scheduler.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                synchronized (pending) {
+                    if (pending.get(pid) != p) {
+                        // already released
+                        return;
+                    }
+                    pending.remove(pid);
+                    issue(pid, p.removal);
+                }
+            }
+        }, window, MILLISECONDS);
+    }
+
+    /**
+     * Queue an operation behind any still outstanding for the same
+     * identifier, starting a worker for that identifier if there is none.
+     * Callers must hold the lock on {@link #pending}.
+     */
+    private void issue(final String pid, final Boolean removal) {
+        operationsIssued.incrementAndGet();
+        LOGGER.debug("Issuing coalesced {} for: {}", removal ? "removal"
+                : "update", pid);
+        final Queue<Boolean> queue = issued.get(pid);
+        if (queue != null) {
+            queue.add(removal);
+            return;
+        }
+        final Queue<Boolean> created = new ArrayDeque<>();
+        created.add(removal);
+        issued.put(pid, created);
+        workers.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                drain(pid, created);
+            }
+        });
+    }
+
+    private void drain(final String pid, final Queue<Boolean> queue) {
+        while (true) {
+            final Boolean removal;
+            synchronized (pending) {
+                removal = queue.poll();
+                if (removal == null) {
+                    issued.remove(pid);
+                    return;
+                }
+            }
+            try {
+                handler.handle(pid, removal);
+            } catch (final Exception e) {
+                LOGGER.error("Error handling coalesced operation for {}: {}!",
+                        pid, e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of events received
+     */
+    public long getEventsReceived() {
+        return eventsReceived.get();
+    }
+
+    /**
+     * @return the number of indexing operations issued
+     */
+    public long getOperationsIssued() {
+        return operationsIssued.get();
+    }
+
+    /**
+     * @return the number of identifiers currently held
+     */
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Stop accepting work. Operations already scheduled are still issued.
+     */
+    public void shutdown() {
+        // every window already open closes before this task runs
+        scheduler.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                workers.shutdown();
+            }
+        }, window, MILLISECONDS);
+        scheduler.shutdown();
+    }
+
+    private static class Pending {
+
+        private Boolean removal;
+
+        private Pending(final Boolean removal) {
+            this.removal = removal;
+        }
+    }
+}
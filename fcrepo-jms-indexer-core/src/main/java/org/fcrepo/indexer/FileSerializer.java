@@ -83,7 +83,11 @@ public class FileSerializer extends SynchIndexer<NamedFields, File> {
         }
 
         // timestamped filename
-        String fn = id + "@" + fmt.format(new Date());
+        String fn;
+        synchronized (fmt) {
+            // SimpleDateFormat is not thread-safe
+            fn = id + "@" + fmt.format(new Date());
+        }
         if (fn.indexOf('/') != -1) {
             fn = substringAfterLast(fn, "/");
         }
@@ -0,0 +1,389 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.hash.Hashing.murmur3_128;
+import static com.hp.hpl.jena.graph.Node.ANY;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.apache.jena.riot.out.NodeFmtLib.str;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Remembers a fingerprint of the content last sent to each indexer for each
+ * identifier, so that updates which would send the same content again can be
+ * skipped. Fingerprints are kept in memory and journaled to a local file,
+ * which is compacted each time the store is opened, so that they survive
+ * restarts.
+ *
+ * A fingerprint is recorded only once the indexer has confirmed the update,
+ * and only if no later update or removal of the same identifier was begun in
+ * the meantime: each update takes a version with {@link #sending} before it
+ * is sent, and records against it with
+ * {@link #put(String, String, long, long)}. Every change is written through
+ * to the file, so a crash can lose at most the record of a confirmed update,
+ * which causes an extra update, never a skipped one.
+ */
+public class FingerprintStore implements Closeable {
+
+    private static final Logger LOGGER = getLogger(FingerprintStore.class);
+
+    private static final HashFunction hashing = murmur3_128();
+
+    private static final byte PUT = 1;
+
+    private static final byte REMOVE = 2;
+
+    /**
+     * The journal is compacted when it holds more than this many records
+     * beyond twice the number of fingerprints.
+     */
+    private static final long COMPACTION_SLACK = 10000;
+
+    /**
+     * Number of version counters, each shared by the identifiers whose keys
+     * hash to it. Sharing can only cause a fingerprint not to be recorded.
+     */
+    private static final int VERSIONS = 1024;
+
+    private final AtomicLongArray versions = new AtomicLongArray(VERSIONS);
+
+    private final File file;
+
+    private final ConcurrentMap<String, Long> fingerprints =
+        new ConcurrentHashMap<>();
+
+    private DataOutputStream journal;
+
+    private long records;
+
+    private final AtomicLong checks = new AtomicLong();
+
+    private final AtomicLong skips = new AtomicLong();
+
+    /**
+     * @param file the file in which to keep fingerprints, created if need be
+     * @throws IOException
+     */
+    public FingerprintStore(final File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            load();
+        } else if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        compact();
+        LOGGER.info("Loaded {} fingerprints from: {}", fingerprints.size(),
+                file);
+    }
+
+    private void load() throws IOException {
+        try (
+            DataInputStream in =
+                new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(file)))) {
+            while (true) {
+                final byte op;
+                try {
+                    op = in.readByte();
+                } catch (final EOFException e) {
+                    return;
+                }
+                try {
+                    final String key = in.readUTF();
+                    if (op == PUT) {
+                        fingerprints.put(key, in.readLong());
+                    } else {
+                        fingerprints.remove(key);
+                    }
+                } catch (final EOFException e) {
+                    LOGGER.warn("Ignoring incomplete record at end of: {}",
+                            file);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrite the file to hold only the current fingerprints.
+     *
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+        final File compacted = new File(file.getPath() + ".tmp");
+        try (
+            DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(compacted)))) {
+            for (final Map.Entry<String, Long> fingerprint : fingerprints
+                    .entrySet()) {
+                out.writeByte(PUT);
+                out.writeUTF(fingerprint.getKey());
+                out.writeLong(fingerprint.getValue());
+            }
+        }
+        Files.move(compacted.toPath(), file.toPath(), REPLACE_EXISTING,
+                ATOMIC_MOVE);
+        records = fingerprints.size();
+        journal =
+            new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file, true)));
+    }
+
+    /**
+     * @param indexer
+     * @param id
+     * @param fingerprint of the content about to be sent
+     * @return whether the same content was last sent to this indexer for this
+     *         identifier
+     */
+    public boolean unchanged(final String indexer, final String id,
+        final long fingerprint) {
+        checks.incrementAndGet();
+        final Long last = fingerprints.get(key(indexer, id));
+        if (last != null && last == fingerprint) {
+            skips.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Note that an update is about to be sent. Until the indexer confirms
+     * it, what the index holds is unknown, so the record of any update sent
+     * before it is forgotten.
+     *
+     * @param indexer
+     * @param id
+     * @return the version against which to record the update once the
+     *         indexer confirms it
+     * @throws IOException
+     */
+    public synchronized long sending(final String indexer, final String id)
+        throws IOException {
+        forget(indexer, id);
+        return versions.get(stripe(key(indexer, id)));
+    }
+
+    /**
+     * Record content the indexer has confirmed, unless a later update or
+     * removal was begun since the version was taken.
+     *
+     * @param indexer
+     * @param id
+     * @param fingerprint
+     * @param version from {@link #sending}
+     * @return whether the fingerprint was recorded
+     * @throws IOException
+     */
+    public synchronized boolean put(final String indexer, final String id,
+        final long fingerprint, final long version) throws IOException {
+        if (versions.get(stripe(key(indexer, id))) != version) {
+            return false;
+        }
+        put(indexer, id, fingerprint);
+        return true;
+    }
+
+    /**
+     * Record the content sent to an indexer.
+     *
+     * @param indexer
+     * @param id
+     * @param fingerprint
+     * @throws IOException
+     */
+    public synchronized void put(final String indexer, final String id,
+        final long fingerprint) throws IOException {
+        final String key = key(indexer, id);
+        journal.writeByte(PUT);
+        journal.writeUTF(key);
+        journal.writeLong(fingerprint);
+        journaled();
+        fingerprints.put(key, fingerprint);
+    }
+
+    /**
+     * Forget what was sent to an indexer, e.g. because it failed or the
+     * resource was removed, so that the next update is not skipped.
+     *
+     * @param indexer
+     * @param id
+     * @throws IOException
+     */
+    public synchronized void forget(final String indexer, final String id)
+        throws IOException {
+        final String key = key(indexer, id);
+        versions.incrementAndGet(stripe(key));
+        if (fingerprints.remove(key) != null) {
+            journal.writeByte(REMOVE);
+            journal.writeUTF(key);
+            journaled();
+        }
+    }
+
+    /**
+     * Forget everything, e.g. after an index has been rebuilt.
+     *
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        fingerprints.clear();
+        compact();
+    }
+
+    private void journaled() throws IOException {
+        journal.flush();
+        if (++records > 2 * fingerprints.size() + COMPACTION_SLACK) {
+            compact();
+        }
+    }
+
+    private static String key(final String indexer, final String id) {
+        return indexer + '\t' + id;
+    }
+
+    private static int stripe(final String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % VERSIONS;
+    }
+
+    /**
+     * @param content
+     * @return a fingerprint of the content, or null for content of a kind
+     *         that is not fingerprinted
+     */
+    public static Long fingerprint(final Object content) {
+        if (content instanceof NamedFields) {
+            return fingerprint((NamedFields) content);
+        }
+        if (content instanceof Model) {
+            return fingerprint((Model) content);
+        }
+        return null;
+    }
+
+    /**
+     * @param fields
+     * @return a fingerprint of the names and values of the fields
+     */
+    public static long fingerprint(final NamedFields fields) {
+        final Hasher hasher = hashing.newHasher();
+        // NamedFields iterate in order of name
+        for (final Map.Entry<String, Collection<String>> field : fields
+                .entrySet()) {
+            hasher.putString(field.getKey(), UTF_8).putByte((byte) 0);
+            hasher.putInt(field.getValue().size());
+            for (final String value : field.getValue()) {
+                hasher.putString(value, UTF_8).putByte((byte) 0);
+            }
+        }
+        return hasher.hash().asLong();
+    }
+
+    /**
+     * Triples are combined without regard to order. Blank nodes are labeled
+     * afresh each time RDF is parsed, so RDF with blank nodes will rarely
+     * match an earlier fingerprint.
+     *
+     * @param rdf
+     * @return a fingerprint of the triples
+     */
+    public static long fingerprint(final Model rdf) {
+        long fingerprint = rdf.size();
+        final ExtendedIterator<Triple> triples =
+            rdf.getGraph().find(ANY, ANY, ANY);
+        try {
+            while (triples.hasNext()) {
+                final Triple t = triples.next();
+                fingerprint +=
+                    hashing.newHasher().putString(str(t.getSubject()), UTF_8)
+                            .putByte((byte) 0).putString(
+                                    str(t.getPredicate()), UTF_8).putByte(
+                                    (byte) 0).putString(str(t.getObject()),
+                                    UTF_8).hash().asLong();
+            }
+        } finally {
+            triples.close();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return the number of updates checked against a fingerprint
+     */
+    public long getChecks() {
+        return checks.get();
+    }
+
+    /**
+     * @return the number of updates skipped as unchanged
+     */
+    public long getSkips() {
+        return skips.get();
+    }
+
+    /**
+     * @return the proportion of updates skipped as unchanged
+     */
+    public double getSkipRatio() {
+        final long checked = checks.get();
+        return checked == 0 ? 0 : (double) skips.get() / checked;
+    }
+
+    /**
+     * @return the number of fingerprints held
+     */
+    public int size() {
+        return fingerprints.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        journal.close();
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.http.protocol.ExecutionContext.HTTP_TARGET_HOST;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DecompressingHttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+
+/**
+ * A managed HTTP client to be shared by all outbound traffic: retrieval from
+ * the repository, SPARQL requests and Solr requests. It pools connections
+ * with limits in total and per host, evicts idle connections, accepts
+ * compressed responses, and records how long requests wait to lease a
+ * connection and how long each host takes to respond.
+ *
+ * The client is built with the settings in force on the first call to
+ * {@link #getClient()}.
+ */
+public class HttpTransport {
+
+    private static final Logger LOGGER = getLogger(HttpTransport.class);
+
+    private static final String START_ATTRIBUTE = HttpTransport.class
+            .getName() + ".start";
+
+    /**
+     * Default number of connections that may be open at once.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+
+    /**
+     * Default number of connections to one host that may be open at once.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+
+    /**
+     * Default time in milliseconds after which an idle connection is closed.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+    private Map<String, Integer> hostLimits = Collections.emptyMap();
+
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private boolean gzip = true;
+
+    private InstrumentedConnectionManager connectionManager;
+
+    private HttpClient client;
+
+    private ScheduledExecutorService evictor;
+
+    private final Histogram leaseWaits = new Histogram();
+
+    private final ConcurrentMap<String, Histogram> latencies =
+        new ConcurrentHashMap<>();
+
+    /**
+     * @return the shared client
+     */
+    public synchronized HttpClient getClient() {
+        if (client == null) {
+            connectionManager = new InstrumentedConnectionManager();
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            for (final Map.Entry<String, Integer> limit : hostLimits.entrySet()) {
+                final URI uri = URI.create(limit.getKey());
+                connectionManager.setMaxPerRoute(new HttpRoute(new HttpHost(uri
+                        .getHost(), uri.getPort(), uri.getScheme())), limit
+                        .getValue());
+            }
+            final DefaultHttpClient base =
+                new DefaultHttpClient(connectionManager);
+            base.addRequestInterceptor(new HttpRequestInterceptor() {
+
+                @Override
+                public void process(final HttpRequest request,
+                    final HttpContext context) {
+                    context.setAttribute(START_ATTRIBUTE, nanoTime());
+                }
+            });
+            base.addResponseInterceptor(new HttpResponseInterceptor() {
+
+                @Override
+                public void process(final HttpResponse response,
+                    final HttpContext context) {
+                    final Long start = (Long) context.getAttribute(START_ATTRIBUTE);
+                    final HttpHost host =
+                        (HttpHost) context.getAttribute(HTTP_TARGET_HOST);
+                    if (start != null && host != null) {
+                        latency(host.toHostString()).update(
+                                NANOSECONDS.toMillis(nanoTime() - start));
+                    }
+                }
+            });
+            client = gzip ? new DecompressingHttpClient(base) : base;
+            evictor = newSingleThreadScheduledExecutor();
+            evictor.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    connectionManager.closeExpiredConnections();
+                    connectionManager.closeIdleConnections(idleTimeout,
+                            MILLISECONDS);
+                }
+            }, idleTimeout, idleTimeout, MILLISECONDS);
+            LOGGER.debug("Created shared HTTP client: {}", client);
+        }
+        return client;
+    }
+
+    private Histogram latency(final String host) {
+        final Histogram latency = latencies.get(host);
+        if (latency != null) {
+            return latency;
+        }
+        latencies.putIfAbsent(host, new Histogram());
+        return latencies.get(host);
+    }
+
+    /**
+     * Close all connections and stop evicting idle ones.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (client != null) {
+            evictor.shutdown();
+            connectionManager.shutdown();
+            client = null;
+        }
+    }
+
+    /**
+     * @param max the number of connections that may be open at once
+     */
+    public void setMaxConnections(final int max) {
+        this.maxConnections = max;
+    }
+
+    /**
+     * @param max the number of connections to one host that may be open at
+     *        once, unless set for that host with {@link #setHostLimits}
+     */
+    public void setMaxConnectionsPerRoute(final int max) {
+        this.maxConnectionsPerRoute = max;
+    }
+
+    /**
+     * @param hostLimits numbers of connections that may be open at once, by
+     *        base URL (e.g. http://localhost:8080)
+     */
+    public void setHostLimits(final Map<String, Integer> hostLimits) {
+        this.hostLimits = hostLimits;
+    }
+
+    /**
+     * @param idleTimeout the time in milliseconds after which an idle
+     *        connection is closed
+     */
+    public void setIdleTimeout(final long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @param gzip whether to ask for and decompress compressed responses
+     */
+    public void setGzip(final boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * @return the times in microseconds that requests waited to lease a
+     *         connection from the pool; its count is the number of leases
+     */
+    public Histogram getLeaseWaits() {
+        return leaseWaits;
+    }
+
+    /**
+     * @return the times in milliseconds until response headers arrived, by
+     *         host
+     */
+    public Map<String, Histogram> getLatencies() {
+        return Collections.unmodifiableMap(latencies);
+    }
+
+    /**
+     * @return the current state of the connection pool, or null if the
+     *         client has not been built
+     */
+    public synchronized PoolStats getPoolStats() {
+        return connectionManager == null ? null : connectionManager
+                .getTotalStats();
+    }
+
+    /**
+     * Times each lease of a connection from the pool.
+     */
+    private class InstrumentedConnectionManager extends
+        PoolingClientConnectionManager {
+
+        @Override
+        public ClientConnectionRequest requestConnection(
+            final HttpRoute route, final Object state) {
+            final ClientConnectionRequest request =
+                super.requestConnection(route, state);
+            return new ClientConnectionRequest() {
+
+                @Override
+                public ManagedClientConnection getConnection(
+                    final long timeout, final TimeUnit unit)
+                    throws InterruptedException,
+                    ConnectionPoolTimeoutException {
+                    final long start = nanoTime();
+                    try {
+                        return request.getConnection(timeout, unit);
+                    } finally {
+                        leaseWaits.update(NANOSECONDS.toMicros(nanoTime()
+                                - start));
+                    }
+                }
+
+                @Override
+                public void abortRequest() {
+                    request.abortRequest();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static com.google.common.util.concurrent.Futures.addCallback;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Accumulates operations for a {@link BatchIndexer} and hands them over when
+ * either a maximum batch size is reached or the oldest waiting operation has
+ * waited for a maximum delay. Only the latest operation for an identifier is
+ * kept, because only the final state of a resource matters to an index.
+ *
+ * @param <Content> the type of content to index
+ */
+public class IndexerBatcher<Content> {
+
+    private static final Logger LOGGER = getLogger(IndexerBatcher.class);
+
+    private final BatchIndexer<Content> indexer;
+
+    private final int maxSize;
+
+    private final long maxDelay;
+
+    private final ScheduledExecutorService scheduler;
+
+    private Map<String, Content> updates = new LinkedHashMap<>();
+
+    private Set<String> removals = new LinkedHashSet<>();
+
+    private ScheduledFuture<?> timer;
+
+    private final AtomicLong operations = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Held while a batch is taken and handed over, so that batches reach the
+     * indexer in order without blocking operations being queued.
+     */
+    private final Object sending = new Object();
+
+    private volatile UpdateListener<Content> updateListener;
+
+    /**
+     * @param indexer the indexer to which to hand batches
+     * @param maxSize the number of operations at which a batch is sent
+     * @param maxDelay the time in milliseconds after which a batch is sent
+     *        regardless of size
+     * @param scheduler used to send batches that time out
+     */
+    public IndexerBatcher(final BatchIndexer<Content> indexer,
+        final int maxSize, final long maxDelay,
+        final ScheduledExecutorService scheduler) {
+        this.indexer = indexer;
+        this.maxSize = maxSize;
+        this.maxDelay = maxDelay;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Queue an update.
+     *
+     * @param id
+     * @param content
+     */
+    public void update(final String id, final Content content) {
+        final boolean full;
+        synchronized (this) {
+            removals.remove(id);
+            updates.put(id, content);
+            full = added();
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Queue a removal.
+     *
+     * @param id
+     */
+    public void remove(final String id) {
+        final boolean full;
+        synchronized (this) {
+            updates.remove(id);
+            removals.add(id);
+            full = added();
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * @return whether the batch is full and should be sent
+     */
+    private boolean added() {
+        operations.incrementAndGet();
+        if (size() >= maxSize) {
+            return true;
+        }
+        if (timer == null) {
+            timer = scheduler.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, maxDelay, MILLISECONDS);
+        }
+        return false;
+    }
+
+    /**
+     * Hand any waiting operations to the indexer. Operations continue to be
+     * queued while a batch is handed over; batches are handed over one at a
+     * time, in the order in which they were taken.
+     */
+    public void flush() {
+        synchronized (sending) {
+            final Map<String, Content> updateBatch;
+            final Set<String> removalBatch;
+            synchronized (this) {
+                if (timer != null) {
+                    timer.cancel(false);
+                    timer = null;
+                }
+                if (size() == 0) {
+                    return;
+                }
+                updateBatch = updates;
+                removalBatch = removals;
+                updates = new LinkedHashMap<>();
+                removals = new LinkedHashSet<>();
+            }
+            send(updateBatch, removalBatch);
+        }
+    }
+
+    private void send(final Map<String, Content> updateBatch,
+        final Set<String> removalBatch) {
+        batches.incrementAndGet();
+        LOGGER.debug("Sending batch of {} updates and {} removals to: {}",
+                updateBatch.size(), removalBatch.size(), indexer);
+        try {
+            if (!removalBatch.isEmpty()) {
+                final ListenableFuture<?> result =
+                    indexer.removeAll(new ArrayList<>(removalBatch));
+                if (result != null) {
+                    addCallback(result, new FutureCallback<Object>() {
+
+                        @Override
+                        public void onSuccess(final Object response) {
+                            // nothing to do
+                        }
+
+                        @Override
+                        public void onFailure(final Throwable t) {
+                            LOGGER.error(
+                                    "Failed to remove batch of {} from {}: {}!",
+                                    removalBatch.size(), indexer, t);
+                        }
+                    });
+                }
+            }
+            if (!updateBatch.isEmpty()) {
+                final ListenableFuture<?> result =
+                    indexer.updateAll(updateBatch);
+                if (result != null) {
+                    addCallback(result, new FutureCallback<Object>() {
+
+                        @Override
+                        public void onSuccess(final Object response) {
+                            succeeded(updateBatch);
+                        }
+
+                        @Override
+                        public void onFailure(final Throwable t) {
+                            failed(updateBatch.keySet());
+                        }
+                    });
+                }
+            }
+        } catch (final Exception e) {
+            LOGGER.error("Error sending batch to {}: {}!", indexer, e);
+            failed(updateBatch.keySet());
+        }
+    }
+
+    private void succeeded(final Map<String, Content> updateBatch) {
+        final UpdateListener<Content> listener = updateListener;
+        if (listener != null) {
+            listener.updatesSucceeded(updateBatch);
+        }
+    }
+
+    private void failed(final Collection<String> ids) {
+        final UpdateListener<Content> listener = updateListener;
+        if (listener != null && !ids.isEmpty()) {
+            listener.updatesFailed(ids);
+        }
+    }
+
+    /**
+     * @param listener to be told of the outcome of updates handed to the
+     *        indexer. Updates whose outcome the indexer does not report are
+     *        not told of.
+     */
+    public void setUpdateListener(final UpdateListener<Content> listener) {
+        this.updateListener = listener;
+    }
+
+    /**
+     * Told of the outcome of updates handed to an indexer.
+     *
+     * @param <Content> the type of content indexed
+     */
+    public static interface UpdateListener<Content> {
+
+        /**
+         * @param updates the content the indexer applied, by identifier
+         */
+        void updatesSucceeded(Map<String, Content> updates);
+
+        /**
+         * @param ids the identifiers of the failed updates
+         */
+        void updatesFailed(Collection<String> ids);
+    }
+
+    /**
+     * @return the number of operations waiting
+     */
+    public synchronized int size() {
+        return updates.size() + removals.size();
+    }
+
+    /**
+     * @return the number of operations received
+     */
+    public long getOperationCount() {
+        return operations.get();
+    }
+
+    /**
+     * @return the number of batches sent
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+}
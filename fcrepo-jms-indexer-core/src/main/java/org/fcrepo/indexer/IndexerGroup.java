@@ -17,6 +17,9 @@
 package org.fcrepo.indexer;
 
 import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.Resource;
@@ -26,19 +29,35 @@ import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.fcrepo.kernel.utils.EventType;
 import org.slf4j.Logger;
 
+import javax.annotation.PreDestroy;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
+import java.io.File;
+import java.io.IOException;
 import java.io.Reader;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.base.Suppliers.memoize;
 import static com.google.common.base.Throwables.propagate;
+import static com.google.common.util.concurrent.Futures.addCallback;
 import static com.hp.hpl.jena.rdf.model.ResourceFactory.createProperty;
 import static com.hp.hpl.jena.rdf.model.ResourceFactory.createResource;
 import static com.hp.hpl.jena.vocabulary.RDF.type;
-import static java.lang.Integer.MAX_VALUE;
+import static java.util.Collections.emptyList;
 import static javax.jcr.observation.Event.NODE_REMOVED;
+import static org.fcrepo.indexer.Indexer.IndexerType.NAMEDFIELDS;
+import static org.fcrepo.indexer.Indexer.IndexerType.RDF;
 import static org.fcrepo.kernel.RdfLexicon.REPOSITORY_NAMESPACE;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -59,7 +78,73 @@ public class IndexerGroup implements MessageListener {
 
     private Set<Indexer<Object>> indexers;
 
-    private HttpClient httpClient;
+    private volatile HttpClient httpClient;
+
+    private volatile EventCoalescer coalescer;
+
+    private volatile PartitionedDispatcher dispatcher;
+
+    private volatile int batchSize = 1;
+
+    private volatile long batchDelay = DEFAULT_BATCH_DELAY;
+
+    private ScheduledThreadPoolExecutor batchScheduler;
+
+    private final ConcurrentMap<Indexer<Object>, IndexerBatcher<Object>> batchers =
+        new ConcurrentHashMap<>();
+
+    private volatile ResponseCache<Model> rdfCache;
+
+    private volatile ResponseCache<NamedFields> fieldsCache;
+
+    private volatile ResourceMetadataCache metadataCache;
+
+    private volatile SingleFlight<String, Model> rdfFlights;
+
+    private volatile SingleFlight<String, NamedFields> fieldsFlights;
+
+    private volatile SingleFlight<String, TripleBuffer> tripleFlights;
+
+    private boolean streamingRdf = false;
+
+    private RdfFormat rdfFormat = RdfRetriever.DEFAULT_FORMAT;
+
+    private List<String> omitTriples = emptyList();
+
+    private final Histogram rdfResponseSizes = new Histogram();
+
+    private PoolingClientConnectionManager connectionManager;
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+    private int retrievalThreads = 0;
+
+    private RetrievalExecutor retrievalExecutor;
+
+    private final AtomicLong speculationsUsed = new AtomicLong();
+
+    private final AtomicLong speculationsDiscarded = new AtomicLong();
+
+    private volatile FingerprintStore fingerprints;
+
+    private final ConcurrentMap<String, Batched> batched =
+        new ConcurrentHashMap<>();
+
+    private long responseCacheSize = 0;
+
+    private long responseCacheTtl = DEFAULT_RESPONSE_CACHE_TTL;
+
+    /**
+     * Default time in milliseconds for which a cached response is kept.
+     */
+    public static final long DEFAULT_RESPONSE_CACHE_TTL = 10 * 60 * 1000;
+
+    /**
+     * Default time in milliseconds that an operation may wait in a batch.
+     */
+    public static final long DEFAULT_BATCH_DELAY = 1000;
 
     /**
      * Identifier message header
@@ -97,16 +182,22 @@ public class IndexerGroup implements MessageListener {
 
     private static final Reader EMPTY_CONTENT = null;
 
+    /**
+     * Default number of connections to the repository that may be open at
+     * once.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+
+    /**
+     * Default number of connections to one host that may be open at once.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 100;
+
     /**
      * Default constructor.
      **/
     public IndexerGroup() {
         LOGGER.debug("Creating IndexerGroup: {}", this);
-        final PoolingClientConnectionManager connMann =
-            new PoolingClientConnectionManager();
-        connMann.setMaxTotal(MAX_VALUE);
-        connMann.setDefaultMaxPerRoute(MAX_VALUE);
-        this.httpClient = new DefaultHttpClient(connMann);
     }
 
     /**
@@ -143,8 +234,8 @@ public class IndexerGroup implements MessageListener {
     }
 
     /**
-     * Set HttpClient for this group.  In the constructor a default is set
-     * but this allows it to be customized.
+     * Set HttpClient for this group. If none is set, a default is built on
+     * first use.
      *
      * @param client
      */
@@ -152,13 +243,507 @@ public class IndexerGroup implements MessageListener {
         this.httpClient = client;
     }
 
+    /**
+     * Set the number of connections that the default HttpClient may hold open
+     * at once.
+     *
+     * @param max
+     */
+    public synchronized void setMaxConnections(final int max) {
+        maxConnections = max;
+        if (connectionManager != null) {
+            connectionManager.setMaxTotal(max);
+        }
+    }
+
+    /**
+     * Set the number of connections to one host that the default HttpClient
+     * may hold open at once.
+     *
+     * @param max
+     */
+    public synchronized void setMaxConnectionsPerRoute(final int max) {
+        maxConnectionsPerRoute = max;
+        if (connectionManager != null) {
+            connectionManager.setDefaultMaxPerRoute(max);
+        }
+    }
+
     /**
      * Gets the HttpClient used by this class.
      *
      * @return
      */
     public HttpClient getHttpClient() {
-        return this.httpClient;
+        final HttpClient client = httpClient;
+        return client == null ? defaultHttpClient() : client;
+    }
+
+    private synchronized HttpClient defaultHttpClient() {
+        if (httpClient == null) {
+            connectionManager = new PoolingClientConnectionManager();
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            httpClient = new DefaultHttpClient(connectionManager);
+        }
+        return httpClient;
+    }
+
+    /**
+     * Set the window in milliseconds for which events are held per identifier
+     * and collapsed into a single indexing operation. A window of 0 (the
+     * default) indexes each event as it arrives. Coalesced operations are
+     * handed to the coalescer's own worker threads, in order for each
+     * identifier, and from there to the dispatch lanes if any are set.
+     *
+     * @param window
+     */
+    public void setCoalescingWindow(final long window) {
+        if (coalescer != null) {
+            coalescer.shutdown();
+        }
+        if (window > 0) {
+            coalescer = new EventCoalescer(window, new ResourceEventHandler() {
+
+                @Override
+                public void handle(final String pid, final Boolean removal) {
+                    dispatch(pid, removal);
+                }
+            });
+        } else {
+            coalescer = null;
+        }
+    }
+
+    /**
+     * @return the event coalescer in use, or null if events are not
+     *         coalesced
+     */
+    public EventCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Set the number of lanes across which indexing operations are executed
+     * in parallel. Operations for the same identifier always execute in order
+     * on the same lane. A value of 0 (the default) indexes on the thread that
+     * received the event, or on the coalescer's thread for that identifier.
+     *
+     * @param lanes
+     */
+    public void setDispatchLanes(final int lanes) {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        if (lanes > 0) {
+            dispatcher = new PartitionedDispatcher(lanes, new ResourceEventHandler() {
+
+                @Override
+                public void handle(final String pid, final Boolean removal) {
+                    index(pid, removal);
+                }
+            });
+        } else {
+            dispatcher = null;
+        }
+    }
+
+    /**
+     * @return the dispatcher in use, or null if operations are indexed on
+     *         the receiving thread
+     */
+    public PartitionedDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Set the number of operations to accumulate for each
+     * {@link BatchIndexer} before handing them over. A size of 1 (the
+     * default) sends every operation as it occurs. Indexers that do not
+     * support batching are unaffected. Operations waiting in batches of the
+     * previous size are sent first.
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(final int batchSize) {
+        final Map<Indexer<Object>, IndexerBatcher<Object>> retired;
+        final ScheduledThreadPoolExecutor retiredScheduler;
+        synchronized (this) {
+            this.batchSize = batchSize;
+            retired = new HashMap<>(batchers);
+            batchers.clear();
+            retiredScheduler = batchScheduler;
+            batchScheduler = null;
+        }
+        for (final IndexerBatcher<Object> batcher : retired.values()) {
+            batcher.flush();
+        }
+        if (retiredScheduler != null) {
+            retiredScheduler.shutdown();
+        }
+    }
+
+    /**
+     * @return the number of operations accumulated per batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set the time in milliseconds after which a partial batch is sent.
+     *
+     * @param batchDelay
+     */
+    public void setBatchDelay(final long batchDelay) {
+        this.batchDelay = batchDelay;
+    }
+
+    /**
+     * @return the time in milliseconds after which a partial batch is sent
+     */
+    public long getBatchDelay() {
+        return batchDelay;
+    }
+
+    /**
+     * Set the number of responses from the repository to cache for
+     * conditional retrieval, for each of RDF and named fields. A size of 0
+     * (the default) disables caching. RDF retrieved with
+     * {@link #setStreamingRdf} is neither cached nor revalidated, since no
+     * parsed {@link Model} is kept to reuse.
+     *
+     * @param size
+     */
+    public synchronized void setResponseCacheSize(final long size) {
+        this.responseCacheSize = size;
+        buildResponseCaches();
+    }
+
+    /**
+     * Set the time in milliseconds for which a cached response is kept.
+     *
+     * @param ttl
+     */
+    public synchronized void setResponseCacheTtl(final long ttl) {
+        this.responseCacheTtl = ttl;
+        buildResponseCaches();
+    }
+
+    private void buildResponseCaches() {
+        if (responseCacheSize > 0) {
+            rdfCache = new ResponseCache<>(responseCacheSize, responseCacheTtl);
+            fieldsCache =
+                new ResponseCache<>(responseCacheSize, responseCacheTtl);
+        } else {
+            rdfCache = null;
+            fieldsCache = null;
+        }
+    }
+
+    /**
+     * @return the cache of RDF responses, or null if responses are not cached
+     */
+    public ResponseCache<Model> getRdfCache() {
+        return rdfCache;
+    }
+
+    /**
+     * @return the cache of named fields responses, or null if responses are
+     *         not cached
+     */
+    public ResponseCache<NamedFields> getFieldsCache() {
+        return fieldsCache;
+    }
+
+    /**
+     * Set the number of resources for which to remember whether they are
+     * indexable and which transformation they name. Known non-indexable
+     * resources are then not retrieved at all. A size of 0 (the default)
+     * disables this.
+     *
+     * @param size
+     */
+    public void setMetadataCacheSize(final long size) {
+        metadataCache = size > 0 ? new ResourceMetadataCache(size) : null;
+    }
+
+    /**
+     * @return the cache of indexing metadata, or null if none is kept
+     */
+    public ResourceMetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * Set whether concurrent retrievals of the same resource (e.g. on
+     * different lanes or by different consumers) should share one request
+     * to the repository.
+     *
+     * @param singleFlight
+     */
+    public void setSingleFlight(final boolean singleFlight) {
+        if (singleFlight) {
+            rdfFlights = new SingleFlight<>();
+            fieldsFlights = new SingleFlight<>();
+            tripleFlights = new SingleFlight<>();
+        } else {
+            rdfFlights = null;
+            fieldsFlights = null;
+            tripleFlights = null;
+        }
+    }
+
+    /**
+     * @return the shared RDF retrievals, or null if retrievals are not shared
+     */
+    public SingleFlight<String, Model> getRdfFlights() {
+        return rdfFlights;
+    }
+
+    /**
+     * @return the shared named fields retrievals, or null if retrievals are
+     *         not shared
+     */
+    public SingleFlight<String, NamedFields> getFieldsFlights() {
+        return fieldsFlights;
+    }
+
+    /**
+     * Set whether RDF should be retrieved by streaming it through a
+     * {@link TripleBuffer} that picks out indexing metadata as it is parsed,
+     * building a full {@link Model} only for RDF indexers. When no RDF
+     * indexer is configured, the triples are not kept at all. Streamed
+     * retrievals do not use the RDF response cache.
+     *
+     * @param streamingRdf
+     */
+    public void setStreamingRdf(final boolean streamingRdf) {
+        this.streamingRdf = streamingRdf;
+    }
+
+    /**
+     * Set the RDF serialization to request from the repository. Formats
+     * differ considerably in parsing cost; see RdfFormatBenchmark in the
+     * benchmarks profile.
+     *
+     * @param rdfFormat
+     */
+    public void setRdfFormat(final RdfFormat rdfFormat) {
+        this.rdfFormat = rdfFormat;
+    }
+
+    /**
+     * @return the RDF serialization requested from the repository
+     */
+    public RdfFormat getRdfFormat() {
+        return rdfFormat;
+    }
+
+    /**
+     * Set the kinds of triples the repository should leave out of RDF
+     * responses, as URIs for the omit parameter of a Prefer header, e.g.
+     * {@link RdfRetriever#PREFER_CONTAINMENT}. Take care that no indexer
+     * needs the triples omitted, and that the indexing type and
+     * transformation are not among them.
+     *
+     * @param omitTriples
+     */
+    public void setOmitTriples(final List<String> omitTriples) {
+        this.omitTriples = omitTriples;
+    }
+
+    /**
+     * @return the sizes in bytes of RDF responses received, for comparison
+     *         of settings such as {@link #setOmitTriples} and
+     *         {@link #setRdfFormat}
+     */
+    public Histogram getRdfResponseSizes() {
+        return rdfResponseSizes;
+    }
+
+    /**
+     * Set the number of retrievals that may run in the background at once,
+     * each on its own thread. Background retrieval is used to retrieve named fields speculatively, at
+     * the same time as RDF, for resources whose transformation was known
+     * before an event invalidated their indexing metadata. A speculative
+     * result is used only if the RDF confirms that the resource is indexable
+     * and still names the same transformation. Requires a metadata cache. A
+     * value of 0 (the default) disables background retrieval.
+     *
+     * @param threads
+     */
+    public synchronized void setRetrievalThreads(final int threads) {
+        if (retrievalExecutor != null) {
+            retrievalExecutor.shutdown();
+            retrievalExecutor = null;
+        }
+        retrievalThreads = threads;
+    }
+
+    /**
+     * @param threads
+     * @deprecated use {@link #setRetrievalThreads(int)}
+     */
+    @Deprecated
+    public void setSpeculativeThreads(final int threads) {
+        setRetrievalThreads(threads);
+    }
+
+    /**
+     * @return the executor of background retrievals, or null if background
+     *         retrieval is disabled
+     */
+    public synchronized RetrievalExecutor getRetrievalExecutor() {
+        if (retrievalExecutor == null && retrievalThreads > 0) {
+            retrievalExecutor = new RetrievalExecutor(retrievalThreads);
+        }
+        return retrievalExecutor;
+    }
+
+    /**
+     * @return the number of speculative retrievals used
+     */
+    public long getSpeculationsUsed() {
+        return speculationsUsed.get();
+    }
+
+    /**
+     * @return the number of speculative retrievals discarded
+     */
+    public long getSpeculationsDiscarded() {
+        return speculationsDiscarded.get();
+    }
+
+    /**
+     * Set a file in which to keep fingerprints of the content last sent to
+     * each indexer for each resource. An update that would send the same
+     * content again is then skipped. Content is recorded only once the
+     * indexer confirms the update, so indexers that report no outcome are
+     * always updated. Indexers of a class of which this group
+     * holds more than one are always updated. Unset (the default) disables
+     * this.
+     *
+     * @param path
+     * @throws IOException
+     */
+    public synchronized void setFingerprintFile(final String path)
+        throws IOException {
+        if (fingerprints != null) {
+            fingerprints.close();
+        }
+        fingerprints =
+            path == null ? null : new FingerprintStore(new File(path));
+    }
+
+    /**
+     * @return the fingerprints of content sent, with the proportion of
+     *         updates skipped, or null if none are kept
+     */
+    public FingerprintStore getFingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * @param indexer
+     * @return the batcher accumulating operations for this indexer, or null
+     *         if operations are sent to it directly
+     */
+    public IndexerBatcher<Object> getBatcher(final Indexer<Object> indexer) {
+        if (batchSize <= 1 || !(indexer instanceof BatchIndexer)) {
+            return null;
+        }
+        final IndexerBatcher<Object> batcher = batchers.get(indexer);
+        if (batcher != null) {
+            return batcher;
+        }
+        return createBatcher(indexer);
+    }
+
+    /**
+     * Create the batcher for an indexer, together with a timer thread for it.
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized IndexerBatcher<Object> createBatcher(
+        final Indexer<Object> indexer) {
+        if (batchSize <= 1) {
+            return null;
+        }
+        final IndexerBatcher<Object> existing = batchers.get(indexer);
+        if (existing != null) {
+            return existing;
+        }
+        if (batchScheduler == null) {
+            batchScheduler =
+                new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                        .setNameFormat("indexer-batch-%d").setDaemon(true)
+                        .build());
+        } else {
+            // one timer thread per batcher, so a slow send to one index
+            // does not hold back partial batches for the others
+            batchScheduler.setCorePoolSize(batchers.size() + 1);
+        }
+        final IndexerBatcher<Object> created =
+            new IndexerBatcher<>((BatchIndexer<Object>) indexer, batchSize,
+                    batchDelay, batchScheduler);
+        created.setUpdateListener(new IndexerBatcher.UpdateListener<Object>() {
+
+            @Override
+            public void updatesSucceeded(final Map<String, Object> updates) {
+                for (final Map.Entry<String, Object> update : updates
+                        .entrySet()) {
+                    confirmBatched(indexer, update.getKey(), update
+                            .getValue());
+                }
+            }
+
+            @Override
+            public void updatesFailed(final Collection<String> ids) {
+                for (final String id : ids) {
+                    forget(indexer, id);
+                }
+            }
+        });
+        batchers.put(indexer, created);
+        return created;
+    }
+
+    /**
+     * Release background resources, sending any operations still waiting.
+     */
+    @SuppressWarnings("unchecked")
+    @PreDestroy
+    public void shutdown() {
+        if (coalescer != null) {
+            coalescer.shutdown();
+        }
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        for (final Map.Entry<Indexer<Object>, IndexerBatcher<Object>> entry : batchers
+                .entrySet()) {
+            entry.getValue().flush();
+            try {
+                ((BatchIndexer<Object>) entry.getKey()).flush();
+            } catch (final IOException e) {
+                LOGGER.error("Error flushing {}: {}!", entry.getKey(), e);
+            }
+        }
+        synchronized (this) {
+            if (batchScheduler != null) {
+                batchScheduler.shutdown();
+            }
+            if (retrievalExecutor != null) {
+                retrievalExecutor.shutdown();
+            }
+            if (fingerprints != null) {
+                try {
+                    fingerprints.close();
+                } catch (final IOException e) {
+                    LOGGER.error("Error closing fingerprints: {}!", e);
+                }
+            }
+        }
     }
 
     /**
@@ -192,85 +777,425 @@ public class IndexerGroup implements MessageListener {
 
             final Boolean removal = REMOVAL_EVENT_TYPE.equals(eventType);
             LOGGER.debug("It is {} that this is a removal operation.", removal);
-            final String uri = getRepositoryURL() + pid;
-            final Supplier<Model> rdfr =
-                memoize(new RdfRetriever(uri, httpClient));
-            final Supplier<NamedFields> nfr =
-                memoize(new NamedFieldsRetriever(uri, httpClient, rdfr));
-            Boolean indexable = false;
-
-            if (!removal) {
-                final Model rdf = rdfr.get();
-                if (rdf.contains(createResource(uri), type, INDEXABLE_MIXIN)) {
-                    LOGGER.debug("Resource: {} retrieved with indexable type.",
-                            pid);
-                    indexable = true;
-                } else {
-                    LOGGER.debug(
-                            "Resource: {} retrieved without indexable type.",
-                            pid);
-                }
+            final ResourceMetadataCache metadata = metadataCache;
+            if (metadata != null
+                    && (removal || eventType.contains("PROPERTY"))) {
+                metadata.invalidate(getRepositoryURL() + pid);
             }
+            if (coalescer == null) {
+                dispatch(pid, removal);
+            } else {
+                coalescer.offer(pid, removal);
+            }
+        } catch (final JMSException e) {
+            LOGGER.error("Error processing JMS event!", e);
+        }
+    }
 
-            for (final Indexer<Object> indexer : getIndexers()) {
-                LOGGER.debug("Operating for indexer: {}", indexer);
-                Boolean hasContent = false;
-                Object content = EMPTY_CONTENT;
-                if (!removal && indexable) {
-                    switch (indexer.getIndexerType()) {
-                        case NAMEDFIELDS:
-                            LOGGER.debug(
-                                    "Retrieving named fields for: {}, (may be cached) to index to {}...",
-                                    pid, indexer);
-                            try  {
-                                content = nfr.get();
-                                hasContent = true;
-                            } catch (final AbsentTransformPropertyException e) {
-                                LOGGER.error("Failed to retrieve indexable content:"
-                                        + "could not find transform property!");
-                                hasContent = false;
-                            }
-                            break;
-                        case RDF:
-                            LOGGER.debug(
-                                    "Retrieving RDF for: {}, (may be cached) to index to {}...",
-                                    pid, indexer);
-                            content = rdfr.get();
-                            hasContent = true;
-                            break;
-                        default:
-                            hasContent = true;
-                            break;
+    private void dispatch(final String pid, final Boolean removal) {
+        if (dispatcher == null) {
+            index(pid, removal);
+        } else {
+            dispatcher.handle(pid, removal);
+        }
+    }
+
+    /**
+     * Retrieve content for a resource as needed and update or remove it in
+     * each indexer.
+     *
+     * @param pid
+     * @param removal
+     */
+    protected void index(final String pid, final Boolean removal) {
+        final String uri = getRepositoryURL() + pid;
+        final ResponseCache<Model> rdfResponses = rdfCache;
+        final ResponseCache<NamedFields> fieldsResponses = fieldsCache;
+        if (removal && rdfResponses != null) {
+            rdfResponses.invalidate(uri);
+        }
+        if (removal && fieldsResponses != null) {
+            fieldsResponses.invalidateAll(NamedFieldsRetriever
+                    .transformPrefix(uri));
+        }
+        final ResourceMetadataCache metadata = metadataCache;
+        final ResourceMetadataCache.Metadata known =
+            removal || metadata == null ? null : metadata.get(uri);
+        final long metadataVersion =
+            metadata == null ? 0 : metadata.version(uri);
+        final RdfRetriever retriever =
+            new RdfRetriever(uri, getHttpClient(), rdfResponses, rdfFormat,
+                    omitTriples, rdfResponseSizes);
+        final Supplier<TripleBuffer> triples;
+        final Supplier<Model> rdfr;
+        if (streamingRdf) {
+            Supplier<TripleBuffer> tripleRetriever =
+                retriever.triples(hasIndexerOfType(RDF));
+            final SingleFlight<String, TripleBuffer> triplesShared =
+                tripleFlights;
+            if (triplesShared != null) {
+                tripleRetriever = triplesShared.share(uri, tripleRetriever);
+            }
+            triples = memoize(tripleRetriever);
+            rdfr = memoize(new Supplier<Model>() {
+
+                @Override
+                public Model get() {
+                    return triples.get().toModel();
+                }
+            });
+        } else {
+            triples = null;
+            Supplier<Model> rdfRetriever = retriever;
+            final SingleFlight<String, Model> rdfShared = rdfFlights;
+            if (rdfShared != null) {
+                rdfRetriever = rdfShared.share(uri, rdfRetriever);
+            }
+            rdfr = memoize(rdfRetriever);
+        }
+        // a known resource that names no transformation must not fall back
+        // to reading it from the RDF, which streaming may not have kept
+        Supplier<NamedFields> nfr =
+            known == null ? fieldsRetriever(uri, rdfr, null)
+                    : known.getTransformKey() == null ? absentTransform(uri)
+                            : fieldsRetriever(uri, rdfr, known
+                                    .getTransformKey());
+        final String transformHint =
+            removal || known != null || metadata == null ? null : metadata
+                    .getTransformHint(uri);
+        final ListenableFuture<NamedFields> speculation =
+            speculate(uri, transformHint);
+        Boolean indexable = false;
+        boolean speculationUsed = false;
+        try {
+            if (!removal && known != null) {
+                indexable = known.isIndexable();
+                LOGGER.debug("Resource: {} is known {} indexable type.", pid,
+                        indexable ? "to have" : "not to have");
+            } else if (!removal) {
+                final String transformKey;
+                if (triples != null) {
+                    final TripleBuffer buffer = triples.get();
+                    indexable = buffer.isIndexable();
+                    transformKey = buffer.getTransformKey();
+                    nfr = transformKey == null ? absentTransform(uri)
+                            : fieldsRetriever(uri, rdfr, transformKey);
+                } else {
+                    final Model rdf = rdfr.get();
+                    indexable =
+                        rdf.contains(createResource(uri), type, INDEXABLE_MIXIN);
+                    transformKey = NamedFieldsRetriever.transformKey(rdf, uri);
+                }
+                LOGGER.debug("Resource: {} retrieved {} indexable type.", pid,
+                        indexable ? "with" : "without");
+                if (metadata != null) {
+                    metadata.put(uri, metadataVersion, indexable, transformKey);
+                }
+                if (speculation != null) {
+                    if (indexable && transformHint.equals(transformKey)) {
+                        LOGGER.debug("Using speculative retrieval for: {}", pid);
+                        speculationsUsed.incrementAndGet();
+                        speculationUsed = true;
+                        nfr = memoize(speculated(speculation, nfr));
+                    } else {
+                        LOGGER.debug("Discarding speculative retrieval for: {}",
+                                pid);
+                        speculationsDiscarded.incrementAndGet();
                     }
                 }
+            }
+        } finally {
+            // also when retrieving the RDF failed; the retrieval may have
+            // been joined, so it is not interrupted
+            if (speculation != null && !speculationUsed) {
+                speculation.cancel(false);
+            }
+        }
 
-                try {
-                    if (removal) {
+        for (final Indexer<Object> indexer : getIndexers()) {
+            LOGGER.debug("Operating for indexer: {}", indexer);
+            Boolean hasContent = false;
+            Object content = EMPTY_CONTENT;
+            if (!removal && indexable) {
+                switch (indexer.getIndexerType()) {
+                    case NAMEDFIELDS:
+                        LOGGER.debug(
+                                "Retrieving named fields for: {}, (may be cached) to index to {}...",
+                                pid, indexer);
+                        try  {
+                            content = nfr.get();
+                            hasContent = true;
+                        } catch (final AbsentTransformPropertyException e) {
+                            LOGGER.error("Failed to retrieve indexable content:"
+                                    + "could not find transform property!");
+                            hasContent = false;
+                        }
+                        break;
+                    case RDF:
                         LOGGER.debug(
-                                "Executing removal of: {} to indexer: {}...",
+                                "Retrieving RDF for: {}, (may be cached) to index to {}...",
                                 pid, indexer);
+                        content = rdfr.get();
+                        hasContent = true;
+                        break;
+                    default:
+                        hasContent = true;
+                        break;
+                }
+            }
+
+            final IndexerBatcher<Object> batcher = getBatcher(indexer);
+            try {
+                if (removal) {
+                    LOGGER.debug(
+                            "Executing removal of: {} to indexer: {}...",
+                            pid, indexer);
+                    forget(indexer, uri);
+                    if (batcher == null) {
                         indexer.remove(uri);
                     } else {
-                        if (hasContent) {
-                            LOGGER.debug(
-                                    "Executing update of: {} to indexer: {}...",
-                                    pid, indexer);
-                            indexer.update(uri, content);
-                        } else if (indexable) {
-                            LOGGER.error(
-                                    "Received update for: {} but was unable to retrieve "
-                                            + "content for update to indexer: {}!",
-                                    pid, indexer);
+                        batcher.remove(uri);
+                    }
+                } else {
+                    final FingerprintStore store = fingerprints;
+                    final String key =
+                        store == null ? null : fingerprintKey(indexer);
+                    final Long fingerprint =
+                        hasContent && key != null ? FingerprintStore
+                                .fingerprint(content) : null;
+                    if (fingerprint != null
+                            && store.unchanged(key, uri, fingerprint)) {
+                        LOGGER.debug(
+                                "Skipping unchanged update of: {} to indexer: {}",
+                                pid, indexer);
+                    } else if (hasContent) {
+                        LOGGER.debug(
+                                "Executing update of: {} to indexer: {}...",
+                                pid, indexer);
+                        final long version =
+                            fingerprint == null ? 0 : store.sending(key, uri);
+                        if (batcher == null) {
+                            confirmOnSuccess(indexer, uri, fingerprint,
+                                    version, indexer.update(uri, content));
+                        } else {
+                            if (fingerprint != null) {
+                                batched.put(batchedKey(indexer, uri),
+                                        new Batched(content, fingerprint,
+                                                version));
+                            }
+                            batcher.update(uri, content);
                         }
+                    } else if (indexable) {
+                        LOGGER.error(
+                                "Received update for: {} but was unable to retrieve "
+                                        + "content for update to indexer: {}!",
+                                pid, indexer);
                     }
-                } catch (final Exception e) {
-                    LOGGER.error("Error indexing {}: {}!", pid, e);
                 }
+            } catch (final Exception e) {
+                LOGGER.error("Error indexing {}: {}!", pid, e);
+                forget(indexer, uri);
             }
+        }
+    }
 
-        } catch (final JMSException e) {
-            LOGGER.error("Error processing JMS event!", e);
+    /**
+     * @param indexer
+     * @return the name under which fingerprints of content sent to the
+     *         indexer are kept, or null if they are not kept
+     */
+    private String fingerprintKey(final Indexer<Object> indexer) {
+        for (final Indexer<Object> other : getIndexers()) {
+            if (other != indexer && other.getClass() == indexer.getClass()) {
+                return null;
+            }
+        }
+        return indexer.getClass().getName();
+    }
+
+    /**
+     * Record the content as sent once the indexer confirms the update, and
+     * forget what was sent if it fails.
+     */
+    private void confirmOnSuccess(final Indexer<Object> indexer,
+        final String uri, final Long fingerprint, final long version,
+        final ListenableFuture<?> result) {
+        if (result == null || fingerprint == null) {
+            return;
+        }
+        addCallback(result, new FutureCallback<Object>() {
+
+            @Override
+            public void onSuccess(final Object response) {
+                confirm(indexer, uri, fingerprint, version);
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                forget(indexer, uri);
+            }
+        });
+    }
+
+    /**
+     * Record a batched update as sent, if the content the batcher sent is
+     * the latest queued for the resource; a later update records itself.
+     */
+    private void confirmBatched(final Indexer<Object> indexer,
+        final String uri, final Object content) {
+        final String key = batchedKey(indexer, uri);
+        final Batched queued = batched.get(key);
+        if (queued != null && queued.content == content
+                && batched.remove(key, queued)) {
+            confirm(indexer, uri, queued.fingerprint, queued.version);
         }
     }
 
+    private void confirm(final Indexer<Object> indexer, final String uri,
+        final long fingerprint, final long version) {
+        final FingerprintStore store = fingerprints;
+        final String key = store == null ? null : fingerprintKey(indexer);
+        if (key != null) {
+            try {
+                store.put(key, uri, fingerprint, version);
+            } catch (final IOException e) {
+                LOGGER.error("Error recording fingerprint of {} for {}: {}!",
+                        uri, indexer, e);
+            }
+        }
+    }
+
+    /**
+     * Forget the content sent to the indexer, so that the next update is not
+     * skipped.
+     */
+    private void forget(final Indexer<Object> indexer, final String uri) {
+        final FingerprintStore store = fingerprints;
+        final String key = store == null ? null : fingerprintKey(indexer);
+        if (key != null) {
+            batched.remove(batchedKey(indexer, uri));
+            try {
+                store.forget(key, uri);
+            } catch (final IOException e) {
+                LOGGER.error("Error forgetting fingerprint of {} for {}: {}!",
+                        uri, indexer, e);
+            }
+        }
+    }
+
+    private static String batchedKey(final Indexer<Object> indexer,
+        final String uri) {
+        return System.identityHashCode(indexer) + "\t" + uri;
+    }
+
+    /**
+     * An update waiting in a batcher, to be recorded as sent once the
+     * indexer confirms it.
+     */
+    private static class Batched {
+
+        private final Object content;
+
+        private final long fingerprint;
+
+        private final long version;
+
+        Batched(final Object content, final long fingerprint,
+            final long version) {
+            this.content = content;
+            this.fingerprint = fingerprint;
+            this.version = version;
+        }
+    }
+
+    /**
+     * @param uri
+     * @param rdfr used to determine the transformation, if it is not known
+     * @param transformKey the transformation, or null to read it from the RDF
+     * @return a retriever of named fields, shared with concurrent retrievals
+     *         if so configured
+     */
+    private Supplier<NamedFields> fieldsRetriever(final String uri,
+        final Supplier<Model> rdfr, final String transformKey) {
+        Supplier<NamedFields> retriever =
+            new NamedFieldsRetriever(uri, getHttpClient(), rdfr, fieldsCache,
+                    transformKey);
+        final SingleFlight<String, NamedFields> shared = fieldsFlights;
+        if (shared != null) {
+            retriever = shared.share(uri, retriever);
+        }
+        return memoize(retriever);
+    }
+
+    /**
+     * @param uri
+     * @return a retriever of named fields for a resource that names no
+     *         transformation
+     */
+    private static Supplier<NamedFields> absentTransform(final String uri) {
+        return new Supplier<NamedFields>() {
+
+            @Override
+            public NamedFields get() {
+                throw new AbsentTransformPropertyException(uri);
+            }
+        };
+    }
+
+    private boolean hasIndexerOfType(final Indexer.IndexerType indexerType) {
+        for (final Indexer<Object> indexer : getIndexers()) {
+            if (indexer.getIndexerType() == indexerType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Begin retrieving named fields with a transformation hint, if
+     * speculation is enabled and some indexer wants named fields.
+     *
+     * @param uri
+     * @param transformHint
+     * @return the retrieval in progress, or null if none was begun
+     */
+    private ListenableFuture<NamedFields> speculate(final String uri,
+        final String transformHint) {
+        if (transformHint == null) {
+            return null;
+        }
+        final RetrievalExecutor retriever = getRetrievalExecutor();
+        if (retriever == null || !hasIndexerOfType(NAMEDFIELDS)) {
+            return null;
+        }
+        LOGGER.debug("Speculatively retrieving named fields for: {}", uri);
+        return retriever.retrieve(fieldsRetriever(uri, null, transformHint));
+    }
+
+    /**
+     * @param speculation
+     * @param fallback used if the speculative retrieval failed
+     * @return the result of a speculative retrieval
+     */
+    private static Supplier<NamedFields> speculated(
+        final Future<NamedFields> speculation,
+        final Supplier<NamedFields> fallback) {
+        return new Supplier<NamedFields>() {
+
+            @Override
+            public NamedFields get() {
+                try {
+                    return speculation.get();
+                } catch (final ExecutionException e) {
+                    LOGGER.debug("Speculative retrieval failed, retrying: {}",
+                            e.getCause());
+                    return fallback.get();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw propagate(e);
+                }
+            }
+        };
+    }
+
 }
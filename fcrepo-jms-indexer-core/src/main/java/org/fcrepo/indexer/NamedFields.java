@@ -13,20 +13,57 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package org.fcrepo.indexer;
 
+import static com.google.common.collect.Interners.newWeakInterner;
+import static com.google.common.collect.Iterators.forArray;
+import static java.util.Arrays.copyOf;
+import static java.util.Arrays.sort;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
 
+import com.google.common.collect.Interner;
 
 /**
  * A group of named fields.
  *
+ * Instances are immutable, so one may be handed to any number of indexers at
+ * once. Fields are held in an array sorted by name, field names are interned
+ * so that every instance shares the same name strings, and the values of each
+ * field are held in an array of their own. {@link #with(String, Collection)}
+ * gives a copy with one more field that shares the values of this one.
+ *
  * @author ajs6f
  * @date Dec 13, 2013
  */
-public class NamedFields extends HashMap<String, Collection<String>> {
+public class NamedFields extends AbstractMap<String, Collection<String>>
+    implements Serializable {
+
+    private static final Interner<String> names = newWeakInterner();
+
+    private static final Field[] NO_FIELDS = new Field[0];
+
+    private static final Comparator<Field> byName = new Comparator<Field>() {
+
+        @Override
+        public int compare(final Field f1, final Field f2) {
+            return f1.getKey().compareTo(f2.getKey());
+        }
+    };
+
+    private final Field[] fields;
 
     /**
      * Default constructor
@@ -34,16 +71,222 @@ public class NamedFields extends HashMap<String, Collection<String>> {
      * @param values
      */
     public NamedFields(final Map<String, Collection<String>> values) {
-        super(values);
+        if (values instanceof NamedFields) {
+            this.fields = ((NamedFields) values).fields;
+        } else {
+            final Builder b = new Builder(values.size());
+            for (final Map.Entry<String, Collection<String>> value : values
+                    .entrySet()) {
+                b.field(value.getKey(), value.getValue());
+            }
+            this.fields = b.sorted();
+        }
     }
 
     /**
      * Constructor for empty object.
      */
     public NamedFields() {
-        super();
+        this.fields = NO_FIELDS;
+    }
+
+    private NamedFields(final Field[] fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * @param name
+     * @param values
+     * @return these fields with the named field set to the given values,
+     *         replacing any field already so named. This object is left as it
+     *         is, and shares its values with the result.
+     */
+    public NamedFields with(final String name, final Collection<String> values) {
+        final Field field = new Field(names.intern(name), toArray(values));
+        final int i = indexOf(name);
+        final Field[] result;
+        if (i >= 0) {
+            result = fields.clone();
+            result[i] = field;
+        } else {
+            final int insertion = -(i + 1);
+            result = new Field[fields.length + 1];
+            System.arraycopy(fields, 0, result, 0, insertion);
+            result[insertion] = field;
+            System.arraycopy(fields, insertion, result, insertion + 1,
+                    fields.length - insertion);
+        }
+        return new NamedFields(result);
+    }
+
+    @Override
+    public Collection<String> get(final Object name) {
+        if (!(name instanceof String)) {
+            return null;
+        }
+        final int i = indexOf((String) name);
+        return i < 0 ? null : fields[i].getValue();
+    }
+
+    @Override
+    public boolean containsKey(final Object name) {
+        return name instanceof String && indexOf((String) name) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return fields.length;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Collection<String>>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Collection<String>>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, Collection<String>>> iterator() {
+                final Map.Entry<String, Collection<String>>[] entries = fields;
+                return forArray(entries);
+            }
+
+            @Override
+            public int size() {
+                return fields.length;
+            }
+        };
+    }
+
+    /**
+     * @param name
+     * @return the position of the named field, or (-(insertion point) - 1) if
+     *         there is none
+     */
+    private int indexOf(final String name) {
+        int low = 0;
+        int high = fields.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = fields[mid].getKey().compareTo(name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static String[] toArray(final Collection<String> values) {
+        return values.toArray(new String[values.size()]);
+    }
+
+    /**
+     * @return a builder for a new group of fields
+     */
+    public static Builder builder() {
+        return new Builder(8);
+    }
+
+    /**
+     * Collects fields for a new {@link NamedFields}. If a name is given more
+     * than once, the last values given for it are used. Not thread-safe.
+     */
+    public static class Builder {
+
+        private final List<Field> fields;
+
+        private Builder(final int expectedSize) {
+            this.fields = new ArrayList<>(expectedSize);
+        }
+
+        /**
+         * @param name
+         * @param values
+         * @return this builder
+         */
+        public Builder field(final String name, final Collection<String> values) {
+            return field(name, toArray(values));
+        }
+
+        /**
+         * @param name
+         * @param values not copied, so they must not be changed afterwards
+         * @return this builder
+         */
+        public Builder field(final String name, final String... values) {
+            fields.add(new Field(names.intern(name), values));
+            return this;
+        }
+
+        /**
+         * @return the collected fields
+         */
+        public NamedFields build() {
+            return fields.isEmpty() ? new NamedFields() : new NamedFields(
+                    sorted());
+        }
+
+        private Field[] sorted() {
+            final Field[] sorted = fields.toArray(new Field[fields.size()]);
+            // stable, so of any fields with the same name, the last given
+            // remains last
+            sort(sorted, byName);
+            int size = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i + 1 < sorted.length
+                        && sorted[i].getKey().equals(sorted[i + 1].getKey())) {
+                    continue;
+                }
+                sorted[size++] = sorted[i];
+            }
+            return size == sorted.length ? sorted : copyOf(sorted, size);
+        }
+    }
+
+    /**
+     * A named field, which is its own map entry.
+     */
+    private static class Field extends
+        SimpleImmutableEntry<String, Collection<String>> {
+
+        private Field(final String name, final String[] values) {
+            super(name, new Values(values));
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * The values of a field, backed by an array.
+     */
+    private static class Values extends AbstractList<String> implements
+        RandomAccess, Serializable {
+
+        private final String[] values;
+
+        private Values(final String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public String get(final int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public Object[] toArray() {
+            return values.clone();
+        }
+
+        private static final long serialVersionUID = 1L;
     }
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
 }
@@ -16,61 +16,35 @@
 
 package org.fcrepo.indexer;
 
-import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.ImmutableList.builder;
-import static com.google.common.collect.Maps.transformValues;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import org.slf4j.Logger;
 
-import com.google.common.base.Function;
-import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
-import com.google.gson.JsonElement;
 import com.google.gson.TypeAdapter;
-import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
 /**
- * Deserializes JSON maps
+ * Deserializes JSON maps. The JSON is read token by token straight into
+ * {@link NamedFields}, without building a tree of {@link
+ * com.google.gson.JsonElement}s first. Instances hold no state, so one may be
+ * shared by any number of threads.
  *
  * @author ajs6f
  * @date Dec 6, 2013
  */
 public class NamedFieldsDeserializer extends TypeAdapter<NamedFields> {
 
-    private static final Type type = new TypeToken<Collection<Map<String, JsonElement>>>() {}
-            .getType();
-
-    private Gson gson;
-
     //TODO make index-time boost somehow adjustable, or something
     public static final Long INDEX_TIME_BOOST = 1L;
 
     private static final Logger LOGGER = getLogger(NamedFieldsDeserializer.class);
 
-    private static Function<JsonElement, Collection<String>> jsonElement2list =
-        new Function<JsonElement, Collection<String>>() {
-
-            @Override
-            public List<String> apply(final JsonElement input) {
-                final JsonElement json =
-                    checkNotNull(input, "Cannot transform null!");
-                final ImmutableList.Builder<String> b = builder();
-                for (final JsonElement value : json.getAsJsonArray()) {
-                    b.add(value.getAsString());
-                }
-                return b.build();
-            }
-        };
-
     @Override
     public void write(final JsonWriter out, final NamedFields value)
         throws IOException {
@@ -81,25 +55,65 @@ public class NamedFieldsDeserializer extends TypeAdapter<NamedFields> {
     public NamedFields read(final JsonReader in)
         throws IOException {
         try {
-            final Collection<Map<String, JsonElement>> fields =
-                gson.fromJson(in, type);
+            in.beginArray();
             // note: we assume that only one element will exist in
             // fields, because that is the nature of the LDPath machinery
-            return new NamedFields(transformValues(fields.iterator().next(), jsonElement2list));
-        } catch (final Exception e) {
+            final NamedFields fields = readFields(in);
+            while (in.hasNext()) {
+                in.skipValue();
+            }
+            in.endArray();
+            return fields;
+        } catch (final IOException | RuntimeException e) {
             LOGGER.error("Failed to parse JSON to Map<String, Collection<String>>!", e);
             throw e;
         }
+    }
 
+    private static NamedFields readFields(final JsonReader in)
+        throws IOException {
+        final NamedFields.Builder fields = NamedFields.builder();
+        // reused for each field
+        final List<String> values = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            final String name = in.nextName();
+            values.clear();
+            readValues(in, values);
+            fields.field(name, values);
+        }
+        in.endObject();
+        return fields.build();
     }
 
+    private static void readValues(final JsonReader in,
+        final List<String> values) throws IOException {
+        in.beginArray();
+        while (in.hasNext()) {
+            switch (in.peek()) {
+                case NULL:
+                    in.nextNull();
+                    break;
+                case BOOLEAN:
+                    values.add(Boolean.toString(in.nextBoolean()));
+                    break;
+                default:
+                    // strings and numbers
+                    values.add(in.nextString());
+            }
+        }
+        in.endArray();
+    }
 
     /**
-     * @param gson the Gson engine to set
+     * No longer required: this deserializer reads JSON without the help of a
+     * Gson engine.
+     *
+     * @param gson ignored
      * @return this object for continued use
      */
+    @Deprecated
     public NamedFieldsDeserializer setGson(final Gson gson) {
-        this.gson = gson;
         return this;
     }
 
@@ -18,14 +18,16 @@ package org.fcrepo.indexer;
 
 import static com.google.common.base.Throwables.propagate;
 import static com.hp.hpl.jena.rdf.model.ResourceFactory.createResource;
+import static org.apache.http.HttpStatus.SC_NOT_MODIFIED;
 import static org.apache.http.HttpStatus.SC_OK;
+import static org.apache.http.util.EntityUtils.consume;
 import static org.fcrepo.indexer.IndexerGroup.INDEXING_TRANSFORM_PREDICATE;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.lang.reflect.Type;
+
 import org.apache.http.HttpException;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
@@ -33,10 +35,9 @@ import org.apache.http.client.methods.HttpGet;
 import org.slf4j.Logger;
 
 import com.google.common.base.Supplier;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.NodeIterator;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 
 /**
@@ -54,10 +55,15 @@ public class NamedFieldsRetriever implements Supplier<NamedFields> {
 
     private final Supplier<Model> rdfr;
 
-    private Gson gson;
+    private final ResponseCache<NamedFields> cache;
 
-    private static final Type typeToken = new TypeToken<NamedFields>() {}
-            .getType();
+    private final String knownTransformKey;
+
+    /**
+     * Shared by all retrievals: it holds no state.
+     */
+    private static final NamedFieldsDeserializer deserializer =
+        new NamedFieldsDeserializer();
 
     private static final Logger LOGGER = getLogger(NamedFieldsRetriever.class);
 
@@ -69,50 +75,114 @@ public class NamedFieldsRetriever implements Supplier<NamedFields> {
      */
     public NamedFieldsRetriever(final String uri, final HttpClient client,
         final Supplier<Model> rdfr) {
+        this(uri, client, rdfr, null);
+    }
+
+    /**
+     * @param uri
+     * @param client
+     * @param rdfr Used to determine the transform to use with this indexing
+     *        step
+     * @param cache responses with which to make conditional requests, or null
+     */
+    public NamedFieldsRetriever(final String uri, final HttpClient client,
+        final Supplier<Model> rdfr, final ResponseCache<NamedFields> cache) {
+        this(uri, client, rdfr, cache, null);
+    }
+
+    /**
+     * @param uri
+     * @param client
+     * @param rdfr Used to determine the transform to use with this indexing
+     *        step, if it is not already known
+     * @param cache responses with which to make conditional requests, or null
+     * @param knownTransformKey the transform to use, or null to read it from
+     *        the RDF
+     */
+    public NamedFieldsRetriever(final String uri, final HttpClient client,
+        final Supplier<Model> rdfr, final ResponseCache<NamedFields> cache,
+        final String knownTransformKey) {
         this.uri = uri;
         this.httpClient = client;
         this.rdfr = rdfr;
-        final NamedFieldsDeserializer deserializer =
-            new NamedFieldsDeserializer();
-        this.gson =
-            new GsonBuilder().registerTypeAdapter(typeToken, deserializer)
-                    .create();
-        deserializer.setGson(gson);
+        this.cache = cache;
+        this.knownTransformKey = knownTransformKey;
+    }
+
+    /**
+     * @param uri
+     * @return the beginning of the URIs of the resource's transformations
+     */
+    public static String transformPrefix(final String uri) {
+        return uri + "/fcr:transform/";
+    }
+
+    /**
+     * @param rdf
+     * @param uri
+     * @return the indexing transformation named by the resource, or null if
+     *         it names none
+     */
+    public static String transformKey(final Model rdf, final String uri) {
+        final NodeIterator transforms =
+            rdf.listObjectsOfProperty(createResource(uri),
+                    INDEXING_TRANSFORM_PREDICATE);
+        if (!transforms.hasNext()) {
+            return null;
+        }
+        final RDFNode indexingTransform = transforms.next();
+        return indexingTransform.asLiteral().getString();
     }
 
     @Override
     public NamedFields get() {
-        LOGGER.debug("Retrieving RDF representation for: {}", uri);
         try {
-            final Model rdf = rdfr.get();
-            if (!rdf.contains(createResource(uri), INDEXING_TRANSFORM_PREDICATE)) {
-                LOGGER.info(
-                        "Found no property locating LDPath transform for: {}, will not retrieve transformed content.",
-                        uri);
-                throw new AbsentTransformPropertyException(uri);
+            final String transformKey;
+            if (knownTransformKey == null) {
+                LOGGER.debug("Retrieving RDF representation for: {}", uri);
+                transformKey = transformKey(rdfr.get(), uri);
+                if (transformKey == null) {
+                    LOGGER.info(
+                            "Found no property locating LDPath transform for: {}, will not retrieve transformed content.",
+                            uri);
+                    throw new AbsentTransformPropertyException(uri);
+                }
+                LOGGER.debug("Discovered transform key: {}", transformKey);
+            } else {
+                transformKey = knownTransformKey;
+                LOGGER.debug("Using known transform key: {}", transformKey);
             }
-            final RDFNode indexingTransform =
-                rdf.listObjectsOfProperty(createResource(uri),
-                        INDEXING_TRANSFORM_PREDICATE).next();
-            final String transformKey =
-                indexingTransform.asLiteral().getString();
-
-            LOGGER.debug("Discovered transform key: {}", transformKey);
-            final HttpGet transformedResourceRequest =
-                new HttpGet(uri + "/fcr:transform/" + transformKey);
+            final String transformUri = transformPrefix(uri) + transformKey;
+            final HttpGet transformedResourceRequest = new HttpGet(transformUri);
+            final ResponseCache.Entry<NamedFields> cached =
+                cache == null ? null : cache.condition(transformUri,
+                        transformedResourceRequest);
             LOGGER.debug("Retrieving transformed resource from: {}",
                     transformedResourceRequest.getURI());
 
             final HttpResponse response =
                 httpClient.execute(transformedResourceRequest);
-            if (response.getStatusLine().getStatusCode() != SC_OK) {
+            final int status = response.getStatusLine().getStatusCode();
+            if (status == SC_NOT_MODIFIED && cached != null) {
+                consume(response.getEntity());
+                return cache.revalidated(transformUri, cached);
+            }
+            if (status != SC_OK) {
+                consume(response.getEntity());
                 throw new HttpException(response.getStatusLine().toString());
             }
             try (
                 Reader r =
                     new InputStreamReader(response.getEntity().getContent(),
-                            "UTF8")) {
-                return gson.fromJson(r, typeToken);
+                            "UTF8");
+                JsonReader jr = new JsonReader(r)) {
+                // as lenient as Gson.fromJson
+                jr.setLenient(true);
+                final NamedFields fields = deserializer.read(jr);
+                if (cache != null) {
+                    cache.store(transformUri, response, fields);
+                }
+                return fields;
             }
 
         } catch (IOException | HttpException e) {
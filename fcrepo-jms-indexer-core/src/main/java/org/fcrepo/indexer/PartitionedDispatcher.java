@@ -0,0 +1,168 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Integer.MAX_VALUE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Hands indexing operations to a fixed number of single-threaded lanes,
+ * choosing the lane by a hash of the identifier. Operations for the same
+ * resource therefore execute in the order in which they were received, while
+ * operations for different resources proceed in parallel.
+ * <p>
+ * Each lane holds at most a fixed number of waiting operations; once a lane
+ * is full, the caller blocks until there is room, so that a slow index slows
+ * the consumption of events rather than filling memory. Lane threads are
+ * named daemon threads.
+ * <p>
+ * Order is only guaranteed as far as the handler. An {@link AsynchIndexer}
+ * hands each operation on to its own thread pool, where operations for the
+ * same identifier may again complete out of order.
+ */
+public class PartitionedDispatcher implements ResourceEventHandler {
+
+    private static final Logger LOGGER = getLogger(PartitionedDispatcher.class);
+
+    private final ResourceEventHandler handler;
+
+    private final List<ThreadPoolExecutor> lanes;
+
+    /**
+     * The number of operations each lane holds unless another is given.
+     */
+    public static final int DEFAULT_LANE_CAPACITY = 1000;
+
+    /**
+     * Waits for room in a full lane instead of rejecting the operation.
+     */
+    private static final RejectedExecutionHandler WAIT_FOR_ROOM =
+        new RejectedExecutionHandler() {
+
+            @Override
+            public void rejectedExecution(final Runnable r,
+                final ThreadPoolExecutor lane) {
+                if (lane.isShutdown()) {
+                    throw new RejectedExecutionException("Lane is shut down!");
+                }
+                try {
+                    lane.getQueue().put(r);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException(e);
+                }
+            }
+        };
+
+    /**
+     * @param laneCount the number of lanes to use
+     * @param handler receives operations on the lane threads
+     */
+    public PartitionedDispatcher(final int laneCount,
+        final ResourceEventHandler handler) {
+        this(laneCount, DEFAULT_LANE_CAPACITY, handler);
+    }
+
+    /**
+     * @param laneCount the number of lanes to use
+     * @param laneCapacity the number of operations each lane holds before
+     *        callers wait
+     * @param handler receives operations on the lane threads
+     */
+    public PartitionedDispatcher(final int laneCount, final int laneCapacity,
+        final ResourceEventHandler handler) {
+        checkArgument(laneCount > 0, "Must use at least one lane!");
+        checkArgument(laneCapacity > 0, "Lanes must hold at least one operation!");
+        this.handler = handler;
+        this.lanes = new ArrayList<>(laneCount);
+        final ThreadFactory threads =
+            new ThreadFactoryBuilder().setNameFormat("indexer-lane-%d")
+                    .setDaemon(true).build();
+        for (int i = 0; i < laneCount; i++) {
+            lanes.add(new ThreadPoolExecutor(1, 1, 0L, MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(laneCapacity), threads,
+                    WAIT_FOR_ROOM));
+        }
+    }
+
+    @Override
+    public void handle(final String pid, final Boolean removal) {
+        final int lane = laneFor(pid);
+        LOGGER.debug("Dispatching {} for: {} to lane {}.", removal ? "removal"
+                : "update", pid, lane);
+        lanes.get(lane).execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    handler.handle(pid, removal);
+                } catch (final Exception e) {
+                    LOGGER.error("Error indexing {}: {}!", pid, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param pid
+     * @return the lane to which operations for this identifier are assigned
+     */
+    public int laneFor(final String pid) {
+        return (pid.hashCode() & MAX_VALUE) % lanes.size();
+    }
+
+    /**
+     * @return the number of lanes
+     */
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    /**
+     * @return the number of operations waiting in each lane
+     */
+    public List<Integer> getQueueDepths() {
+        final List<Integer> depths = new ArrayList<>(lanes.size());
+        for (final ThreadPoolExecutor lane : lanes) {
+            depths.add(lane.getQueue().size());
+        }
+        return depths;
+    }
+
+    /**
+     * Stop accepting work. Operations already queued are still executed.
+     */
+    public void shutdown() {
+        for (final ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+}
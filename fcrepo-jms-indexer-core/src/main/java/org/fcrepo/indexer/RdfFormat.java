@@ -0,0 +1,59 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static org.apache.jena.riot.WebContent.contentTypeN3;
+import static org.apache.jena.riot.WebContent.contentTypeNTriples;
+import static org.apache.jena.riot.WebContent.contentTypeRDFXML;
+import static org.apache.jena.riot.WebContent.contentTypeTurtle;
+
+import org.apache.jena.riot.Lang;
+
+/**
+ * RDF serializations in which resources may be requested from the
+ * repository, each with the RIOT parser used to read it.
+ */
+public enum RdfFormat {
+
+    N3(contentTypeN3, Lang.N3),
+    TURTLE(contentTypeTurtle, Lang.TURTLE),
+    NTRIPLES(contentTypeNTriples, Lang.NTRIPLES),
+    RDFXML(contentTypeRDFXML, Lang.RDFXML);
+
+    private final String contentType;
+
+    private final Lang lang;
+
+    private RdfFormat(final String contentType, final Lang lang) {
+        this.contentType = contentType;
+        this.lang = lang;
+    }
+
+    /**
+     * @return the media type to request
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the language with which to parse responses
+     */
+    public Lang getLang() {
+        return lang;
+    }
+}
@@ -18,13 +18,17 @@ package org.fcrepo.indexer;
 
 import static com.google.common.base.Throwables.propagate;
 import static com.hp.hpl.jena.rdf.model.ModelFactory.createDefaultModel;
+import static org.apache.jena.riot.RDFDataMgr.parse;
+import static org.apache.jena.riot.RDFDataMgr.read;
+import static org.apache.http.HttpStatus.SC_NOT_MODIFIED;
 import static org.apache.http.HttpStatus.SC_OK;
-import static org.apache.jena.riot.WebContent.contentTypeN3;
+import static org.apache.http.util.EntityUtils.consume;
+import static org.fcrepo.indexer.ResponseCache.variant;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.InputStream;
+import java.util.Collection;
 
 import org.apache.http.HttpException;
 import org.apache.http.HttpResponse;
@@ -33,7 +37,9 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.slf4j.Logger;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Supplier;
+import com.google.common.io.CountingInputStream;
 import com.hp.hpl.jena.rdf.model.Model;
 
 /**
@@ -46,12 +52,41 @@ import com.hp.hpl.jena.rdf.model.Model;
  */
 public class RdfRetriever implements Supplier<Model> {
 
-    private static final String RDF_SERIALIZATION = contentTypeN3;
+    /**
+     * The serialization requested unless another is configured.
+     */
+    public static final RdfFormat DEFAULT_FORMAT = RdfFormat.N3;
+
+    /**
+     * Containment triples (ldp:contains), one per child of a container.
+     */
+    public static final String PREFER_CONTAINMENT =
+        "http://www.w3.org/ns/ldp#PreferContainment";
+
+    /**
+     * Membership triples of LDP containers.
+     */
+    public static final String PREFER_MEMBERSHIP =
+        "http://www.w3.org/ns/ldp#PreferMembership";
+
+    /**
+     * Triples managed by the repository rather than by clients.
+     */
+    public static final String PREFER_SERVER_MANAGED =
+        "http://fedora.info/definitions/v4/repository#ServerManaged";
+
+    private final RdfFormat format;
+
+    private final String prefer;
+
+    private final Histogram responseSizes;
 
     private final String identifier;
 
     private final HttpClient httpClient;
 
+    private final ResponseCache<Model> cache;
+
     private static final Logger LOGGER = getLogger(RdfRetriever.class);
 
     /**
@@ -59,25 +94,100 @@ public class RdfRetriever implements Supplier<Model> {
      * @param client
      */
     public RdfRetriever(final String identifier, final HttpClient client) {
+        this(identifier, client, null);
+    }
+
+    /**
+     * @param identifier
+     * @param client
+     * @param cache responses with which to make conditional requests, or null
+     */
+    public RdfRetriever(final String identifier, final HttpClient client,
+        final ResponseCache<Model> cache) {
+        this(identifier, client, cache, DEFAULT_FORMAT);
+    }
+
+    /**
+     * @param identifier
+     * @param client
+     * @param cache responses with which to make conditional requests, or null
+     * @param format the serialization to request and parse
+     */
+    public RdfRetriever(final String identifier, final HttpClient client,
+        final ResponseCache<Model> cache, final RdfFormat format) {
+        this(identifier, client, cache, format, null, null);
+    }
+
+    /**
+     * @param identifier
+     * @param client
+     * @param cache responses with which to make conditional requests, or null
+     * @param format the serialization to request and parse
+     * @param omit kinds of triples (e.g. {@link #PREFER_CONTAINMENT}) to ask
+     *        the repository to leave out, or null
+     * @param responseSizes in which to record the bytes received, or null
+     */
+    public RdfRetriever(final String identifier, final HttpClient client,
+        final ResponseCache<Model> cache, final RdfFormat format,
+        final Collection<String> omit, final Histogram responseSizes) {
         this.identifier = identifier;
         this.httpClient = client;
+        this.cache = cache;
+        this.format = format;
+        this.prefer =
+            omit == null || omit.isEmpty() ? null
+                    : "return=representation; omit=\""
+                            + Joiner.on(' ').join(omit) + "\"";
+        this.responseSizes = responseSizes;
+    }
+
+    private HttpUriRequest request() {
+        final HttpUriRequest request = new HttpGet(identifier);
+        request.addHeader("Accept", format.getContentType());
+        if (prefer != null) {
+            request.addHeader("Prefer", prefer);
+        }
+        return request;
+    }
+
+    private InputStream content(final HttpResponse response)
+        throws IOException {
+        final InputStream in = response.getEntity().getContent();
+        return responseSizes == null ? in : new CountingInputStream(in) {
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                responseSizes.update(getCount());
+            }
+        };
     }
 
     @Override
     public Model get() {
-        final HttpUriRequest request = new HttpGet(identifier);
-        request.addHeader("Accept", RDF_SERIALIZATION);
+        final HttpUriRequest request = request();
+        final String key = variant(identifier, request);
+        final ResponseCache.Entry<Model> cached =
+            cache == null ? null : cache.condition(key, request);
         LOGGER.debug("Retrieving RDF content from: {}...", request.getURI());
         try {
             final HttpResponse response = httpClient.execute(request);
-            if (response.getStatusLine().getStatusCode() == SC_OK) {
-                try (
-                    Reader r =
-                        new InputStreamReader(
-                                response.getEntity().getContent(), "UTF8")) {
-                    return createDefaultModel().read(r, "", "N3");
+            final int status = response.getStatusLine().getStatusCode();
+            if (status == SC_NOT_MODIFIED && cached != null) {
+                consume(response.getEntity());
+                return cache.revalidated(key, cached);
+            }
+            if (status == SC_OK) {
+                try (InputStream in = content(response)) {
+                    final Model model = createDefaultModel();
+                    read(model, in, identifier, format.getLang());
+                    if (cache != null) {
+                        cache.store(key, response, model);
+                    }
+                    return model;
                 }
             } else {
+                consume(response.getEntity());
                 throw new HttpException(response.getStatusLine().toString());
             }
         } catch (IOException | HttpException e) {
@@ -85,4 +195,46 @@ public class RdfRetriever implements Supplier<Model> {
         }
     }
 
+    /**
+     * Retrieve the resource's RDF by streaming it through a
+     * {@link TripleBuffer}, without building a {@link Model}. Responses are
+     * not cached.
+     *
+     * @param keepTriples whether to keep the triples for later use
+     * @return the parsed RDF
+     */
+    public TripleBuffer getTriples(final boolean keepTriples) {
+        final HttpUriRequest request = request();
+        LOGGER.debug("Streaming RDF content from: {}...", request.getURI());
+        try {
+            final HttpResponse response = httpClient.execute(request);
+            if (response.getStatusLine().getStatusCode() == SC_OK) {
+                try (InputStream in = content(response)) {
+                    final TripleBuffer triples =
+                        new TripleBuffer(identifier, keepTriples);
+                    parse(triples, in, identifier, format.getLang());
+                    return triples;
+                }
+            }
+            consume(response.getEntity());
+            throw new HttpException(response.getStatusLine().toString());
+        } catch (IOException | HttpException e) {
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * @param keepTriples whether to keep the triples for later use
+     * @return a {@link Supplier} for {@link #getTriples(boolean)}
+     */
+    public Supplier<TripleBuffer> triples(final boolean keepTriples) {
+        return new Supplier<TripleBuffer>() {
+
+            @Override
+            public TripleBuffer get() {
+                return getTriples(keepTriples);
+            }
+        };
+    }
+
 }
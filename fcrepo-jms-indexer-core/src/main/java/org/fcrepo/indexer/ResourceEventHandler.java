@@ -0,0 +1,30 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+/**
+ * Receives the indexing operation derived from one or more repository events:
+ * either an update or a removal of the resource at an identifier.
+ */
+public interface ResourceEventHandler {
+
+    /**
+     * @param pid the repository path of the affected resource
+     * @param removal whether the resource was removed
+     */
+    void handle(final String pid, final Boolean removal);
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Remembers, per resource, whether it is indexable and which indexing
+ * transformation it names, so that these need not be read again from its
+ * RDF. Entries must be invalidated when an event may have changed either,
+ * i.e. on property changes and removals. Because events are received while
+ * earlier ones are still being indexed, each entry is written against the
+ * {@link #version(String)} read before its RDF was retrieved, and the write
+ * is dropped if the resource was invalidated since.
+ */
+public class ResourceMetadataCache {
+
+    /**
+     * Default time in milliseconds after which an entry is forgotten even if
+     * no event has invalidated it.
+     */
+    public static final long DEFAULT_TTL = 60 * 60 * 1000;
+
+    /**
+     * Number of version counters, each shared by the resources whose URIs
+     * hash to it. Sharing can only cause a write to be dropped needlessly.
+     */
+    private static final int VERSIONS = 1024;
+
+    private final Cache<String, Metadata> entries;
+
+    private final Cache<String, String> transformHints;
+
+    private final AtomicLongArray versions = new AtomicLongArray(VERSIONS);
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize the maximum number of resources to remember
+     */
+    public ResourceMetadataCache(final long maxSize) {
+        this(maxSize, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxSize the maximum number of resources to remember
+     * @param ttl the time in milliseconds for which an entry is kept
+     */
+    public ResourceMetadataCache(final long maxSize, final long ttl) {
+        this.entries =
+            CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(
+                    ttl, MILLISECONDS).<String, Metadata> build();
+        this.transformHints =
+            CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(
+                    ttl, MILLISECONDS).<String, String> build();
+    }
+
+    /**
+     * @param uri
+     * @return what is known about the resource, or null if nothing is
+     */
+    public Metadata get(final String uri) {
+        final Metadata metadata = entries.getIfPresent(uri);
+        if (metadata == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return metadata;
+    }
+
+    /**
+     * @param uri
+     * @return the version against which to {@link #put} what is learned about
+     *         the resource from RDF retrieved after this call
+     */
+    public long version(final String uri) {
+        return versions.get(stripe(uri));
+    }
+
+    /**
+     * @param uri
+     * @param version the {@link #version(String)} read before the resource's
+     *        RDF was retrieved
+     * @param indexable whether the resource is indexable
+     * @param transformKey the indexing transformation the resource names, or
+     *        null if it names none
+     * @return whether the entry was kept, i.e. the resource was not
+     *         invalidated since the version was read
+     */
+    public boolean put(final String uri, final long version,
+        final boolean indexable, final String transformKey) {
+        final int stripe = stripe(uri);
+        if (versions.get(stripe) != version) {
+            return false;
+        }
+        entries.put(uri, new Metadata(indexable, transformKey));
+        if (versions.get(stripe) != version) {
+            // invalidated while being written
+            entries.invalidate(uri);
+            return false;
+        }
+        if (transformKey != null) {
+            transformHints.put(uri, transformKey);
+        }
+        return true;
+    }
+
+    /**
+     * @param uri
+     * @return the indexing transformation the resource last named, which
+     *         survives invalidation and so may no longer be correct, or null
+     */
+    public String getTransformHint(final String uri) {
+        return transformHints.getIfPresent(uri);
+    }
+
+    /**
+     * Forget what is known about a resource, keeping only a hint of the
+     * transformation it last named.
+     *
+     * @param uri
+     */
+    public void invalidate(final String uri) {
+        versions.incrementAndGet(stripe(uri));
+        entries.invalidate(uri);
+    }
+
+    private static int stripe(final String uri) {
+        return (uri.hashCode() & Integer.MAX_VALUE) % VERSIONS;
+    }
+
+    /**
+     * @return the number of lookups that found an entry
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that found no entry
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Indexing metadata for one resource.
+     */
+    public static class Metadata {
+
+        private final boolean indexable;
+
+        private final String transformKey;
+
+        Metadata(final boolean indexable, final String transformKey) {
+            this.indexable = indexable;
+            this.transformKey = transformKey;
+        }
+
+        /**
+         * @return whether the resource is indexable
+         */
+        public boolean isIndexable() {
+            return indexable;
+        }
+
+        /**
+         * @return the indexing transformation the resource names, or null
+         */
+        public String getTransformKey() {
+            return transformKey;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.slf4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A bounded cache of parsed HTTP responses, keyed by URI (or by a
+ * {@link #variant} of it, where one URI is requested in several ways) and
+ * stored with the
+ * validators (ETag and Last-Modified) they were served with, so that
+ * retrievers can make conditional requests and reuse a parsed result when
+ * the server answers 304 Not Modified. Entries are evicted beyond a maximum
+ * number and after a time-to-live. Cached values are shared between callers
+ * and must not be modified.
+ *
+ * @param <T> the type of parsed response
+ */
+public class ResponseCache<T> {
+
+    private static final Logger LOGGER = getLogger(ResponseCache.class);
+
+    private final Cache<String, Entry<T>> entries;
+
+    private final AtomicLong revalidations = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize the maximum number of responses to keep
+     * @param ttl the time in milliseconds for which a response is kept
+     */
+    public ResponseCache(final long maxSize, final long ttl) {
+        this.entries =
+            CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(
+                    ttl, MILLISECONDS).<String, Entry<T>> build();
+    }
+
+    /**
+     * Separates a URI from the representation requested in a variant key.
+     * Cannot appear in a URI.
+     */
+    private static final String VARIANT_SEPARATOR = " ";
+
+    /**
+     * A key for the representation of a URI that a request asks for, so that
+     * responses in different formats, or with different triples left out, are
+     * not mistaken for one another.
+     *
+     * @param uri
+     * @param request the request, before any conditional headers are added
+     * @return the key
+     */
+    public static String variant(final String uri, final HttpRequest request) {
+        final StringBuilder key = new StringBuilder(uri);
+        for (final String name : new String[] {"Accept", "Prefer"}) {
+            final Header header = request.getFirstHeader(name);
+            key.append(VARIANT_SEPARATOR).append(
+                    header == null ? "" : header.getValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Add conditional headers to a request for any cached response for its
+     * URI.
+     *
+     * @param uri
+     * @param request
+     * @return the cached response against which the request is conditional,
+     *         or null if there is none
+     */
+    public Entry<T> condition(final String uri, final HttpRequest request) {
+        final Entry<T> entry = entries.getIfPresent(uri);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.etag != null) {
+            request.addHeader("If-None-Match", entry.etag);
+        }
+        if (entry.lastModified != null) {
+            request.addHeader("If-Modified-Since", entry.lastModified);
+        }
+        return entry;
+    }
+
+    /**
+     * Record that a conditional request was answered with 304 Not Modified.
+     *
+     * @param uri
+     * @param entry the entry returned from {@link #condition}
+     * @return the cached value
+     */
+    public T revalidated(final String uri, final Entry<T> entry) {
+        LOGGER.debug("Reusing cached response for: {}", uri);
+        revalidations.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Cache a parsed response if it carries a validator.
+     *
+     * @param uri
+     * @param response
+     * @param value
+     */
+    public void store(final String uri, final HttpResponse response,
+        final T value) {
+        misses.incrementAndGet();
+        final String etag = headerValue(response, "ETag");
+        final String lastModified = headerValue(response, "Last-Modified");
+        if (etag == null && lastModified == null) {
+            entries.invalidate(uri);
+            return;
+        }
+        entries.put(uri, new Entry<>(etag, lastModified, value));
+    }
+
+    private static String headerValue(final HttpResponse response,
+        final String name) {
+        final Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    /**
+     * Forget any cached response for a URI, including every variant of it.
+     *
+     * @param uri
+     */
+    public void invalidate(final String uri) {
+        entries.invalidate(uri);
+        final String variants = uri + VARIANT_SEPARATOR;
+        for (final String key : entries.asMap().keySet()) {
+            if (key.startsWith(variants)) {
+                entries.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Forget any cached responses for URIs beginning with a prefix.
+     *
+     * @param prefix
+     */
+    public void invalidateAll(final String prefix) {
+        for (final String uri : entries.asMap().keySet()) {
+            if (uri.startsWith(prefix)) {
+                entries.invalidate(uri);
+            }
+        }
+    }
+
+    /**
+     * @return the number of responses cached
+     */
+    public long size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of requests answered from the cache after
+     *         revalidation
+     */
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    /**
+     * @return the number of requests for which a full response was parsed
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * A cached response and its validators.
+     *
+     * @param <T> the type of parsed response
+     */
+    public static class Entry<T> {
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final T value;
+
+        Entry(final String etag, final String lastModified, final T value) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
+import java.util.concurrent.Callable;
+
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Runs blocking retrievals from the repository on a bounded pool of threads,
+ * returning futures so that a caller may wait only when it needs the result.
+ * Each retrieval in progress occupies a thread for its whole exchange with
+ * the repository: this is not non-blocking I/O. It is used for speculative
+ * retrieval of named fields; the RDF that decides whether a resource is
+ * indexed at all is needed at once and is retrieved on the caller's thread.
+ */
+public class RetrievalExecutor {
+
+    private final ListeningExecutorService executorService;
+
+    /**
+     * @param threads the number of retrievals that may be in progress at once
+     */
+    public RetrievalExecutor(final int threads) {
+        this.executorService = listeningDecorator(newFixedThreadPool(threads));
+    }
+
+    /**
+     * @param retriever
+     * @return the result of the retrieval
+     */
+    public <T> ListenableFuture<T> retrieve(final Supplier<T> retriever) {
+        return executorService.submit(new Callable<T>() {
+
+            @Override
+            public T call() {
+                return retriever.get();
+            }
+        });
+    }
+
+    /**
+     * Stop accepting retrievals.
+     */
+    public void shutdown() {
+        executorService.shutdown();
+    }
+}
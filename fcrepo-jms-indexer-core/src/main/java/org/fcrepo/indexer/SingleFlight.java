@@ -0,0 +1,133 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static com.google.common.base.Throwables.propagate;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Lets concurrent callers asking for the same key share one computation:
+ * the first caller computes the value, and any caller arriving while that
+ * computation is in flight waits for it and receives the same value (or
+ * exception). Nothing is kept once the computation completes, so later
+ * callers compute afresh.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value computed
+ */
+public class SingleFlight<K, V> {
+
+    private static final Logger LOGGER = getLogger(SingleFlight.class);
+
+    private final ConcurrentMap<K, FutureTask<V>> inFlight =
+        new ConcurrentHashMap<>();
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong merges = new AtomicLong();
+
+    /**
+     * @param key
+     * @param supplier computes the value if no computation for this key is
+     *        in flight
+     * @return the value
+     */
+    public V get(final K key, final Supplier<V> supplier) {
+        calls.incrementAndGet();
+        final FutureTask<V> task = new FutureTask<>(new Callable<V>() {
+
+            @Override
+            public V call() {
+                return supplier.get();
+            }
+        });
+        final FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+        if (existing != null) {
+            LOGGER.debug("Joining computation in flight for: {}", key);
+            merges.incrementAndGet();
+            return result(existing);
+        }
+        try {
+            task.run();
+        } finally {
+            inFlight.remove(key, task);
+        }
+        return result(task);
+    }
+
+    /**
+     * @param key
+     * @param supplier
+     * @return a {@link Supplier} that computes through this
+     *         {@link SingleFlight}
+     */
+    public Supplier<V> share(final K key, final Supplier<V> supplier) {
+        return new Supplier<V>() {
+
+            @Override
+            public V get() {
+                return SingleFlight.this.get(key, supplier);
+            }
+        };
+    }
+
+    private static <V> V result(final FutureTask<V> task) {
+        try {
+            return task.get();
+        } catch (final ExecutionException e) {
+            throw propagate(e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * @return the number of values requested
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return the number of requests that joined a computation already in
+     *         flight
+     */
+    public long getMerges() {
+        return merges.get();
+    }
+
+    /**
+     * @return the proportion of requests that joined a computation already in
+     *         flight
+     */
+    public double getMergeRate() {
+        final long n = calls.get();
+        return n == 0 ? 0 : (double) merges.get() / n;
+    }
+}
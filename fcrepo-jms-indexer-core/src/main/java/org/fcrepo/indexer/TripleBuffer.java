@@ -0,0 +1,149 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static com.hp.hpl.jena.graph.NodeFactory.createURI;
+import static com.hp.hpl.jena.rdf.model.ModelFactory.createDefaultModel;
+import static com.hp.hpl.jena.vocabulary.RDF.type;
+import static org.fcrepo.indexer.IndexerGroup.INDEXABLE_MIXIN;
+import static org.fcrepo.indexer.IndexerGroup.INDEXING_TRANSFORM_PREDICATE;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.riot.system.StreamRDF;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.core.Quad;
+
+/**
+ * Receives triples from a streaming parse of one resource's RDF, picking out
+ * as they pass whether the resource is indexable and which indexing
+ * transformation it names. The triples themselves are kept in a plain list,
+ * and only if asked for, so that a full {@link Model} is built only for
+ * callers that need one.
+ */
+public class TripleBuffer implements StreamRDF {
+
+    private static final Node TYPE = type.asNode();
+
+    private static final Node INDEXABLE = INDEXABLE_MIXIN.asNode();
+
+    private static final Node TRANSFORM = INDEXING_TRANSFORM_PREDICATE
+            .asNode();
+
+    private final Node subject;
+
+    private final List<Triple> triples;
+
+    private boolean indexable = false;
+
+    private String transformKey;
+
+    private Model model;
+
+    /**
+     * @param uri the resource whose RDF is parsed
+     * @param keepTriples whether to keep the triples, so that
+     *        {@link #toModel()} may be called
+     */
+    public TripleBuffer(final String uri, final boolean keepTriples) {
+        this.subject = createURI(uri);
+        this.triples = keepTriples ? new ArrayList<Triple>() : null;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void triple(final Triple triple) {
+        if (triples != null) {
+            triples.add(triple);
+        }
+        if (!subject.equals(triple.getSubject())) {
+            return;
+        }
+        final Node predicate = triple.getPredicate();
+        if (predicate.equals(TYPE) && triple.getObject().equals(INDEXABLE)) {
+            indexable = true;
+        } else if (predicate.equals(TRANSFORM) && transformKey == null
+                && triple.getObject().isLiteral()) {
+            transformKey = triple.getObject().getLiteralLexicalForm();
+        }
+    }
+
+    @Override
+    public void quad(final Quad quad) {
+        triple(quad.asTriple());
+    }
+
+    @Override
+    public void base(final String base) {
+    }
+
+    @Override
+    public void prefix(final String prefix, final String iri) {
+    }
+
+    @Override
+    public void finish() {
+    }
+
+    /**
+     * @return whether the resource is indexable
+     */
+    public boolean isIndexable() {
+        return indexable;
+    }
+
+    /**
+     * @return the indexing transformation the resource names, or null if it
+     *         names none
+     */
+    public String getTransformKey() {
+        return transformKey;
+    }
+
+    /**
+     * @return the number of triples kept
+     */
+    public int size() {
+        return triples == null ? 0 : triples.size();
+    }
+
+    /**
+     * @return a {@link Model} of the triples kept, built on first call
+     */
+    public synchronized Model toModel() {
+        if (triples == null) {
+            throw new IllegalStateException(
+                    "Triples were not kept for: " + subject);
+        }
+        if (model == null) {
+            model = createDefaultModel();
+            final Graph graph = model.getGraph();
+            for (final Triple triple : triples) {
+                graph.add(triple);
+            }
+        }
+        return model;
+    }
+}
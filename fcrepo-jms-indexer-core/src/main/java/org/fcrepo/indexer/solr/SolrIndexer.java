@@ -17,30 +17,42 @@
 package org.fcrepo.indexer.solr;
 
 import static com.google.common.base.Throwables.propagate;
-import static com.google.common.collect.Maps.transformEntries;
 import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
-import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonMap;
 import static java.util.concurrent.Executors.newFixedThreadPool;
 import static org.fcrepo.indexer.Indexer.IndexerType.NAMEDFIELDS;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.response.UpdateResponse;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
+import org.apache.solr.common.util.NamedList;
 import org.fcrepo.indexer.AsynchIndexer;
+import org.fcrepo.indexer.BatchIndexer;
 import org.fcrepo.indexer.NamedFields;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.google.common.collect.Maps.EntryTransformer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Striped;
 
 /**
  * A Solr Indexer (stub) implementation that adds some basic information to a
@@ -50,7 +62,8 @@ import com.google.common.util.concurrent.ListeningExecutorService;
  * @author yecao
  * @date Nov 2013
  */
-public class SolrIndexer extends AsynchIndexer<NamedFields, UpdateResponse> {
+public class SolrIndexer extends AsynchIndexer<NamedFields, UpdateResponse>
+    implements BatchIndexer<NamedFields> {
 
     public static final String CONFIGURATION_FOLDER =
         "fedora:system/fedora:transform/fedora:ldpath/";
@@ -58,8 +71,40 @@ public class SolrIndexer extends AsynchIndexer<NamedFields, UpdateResponse> {
     // TODO make index-time boost somehow adjustable, or something
     public static final Long INDEX_TIME_BOOST = 1L;
 
+    /**
+     * The field holding the identifier of each document.
+     */
+    public static final String ID_FIELD = "id";
+
     private final SolrServer server;
 
+    /**
+     * Milliseconds within which Solr should commit our changes, or -1 to
+     * commit explicitly after removals.
+     */
+    private int commitWithin = -1;
+
+    /**
+     * Whether {@link #flush()} should issue a soft commit instead of a hard
+     * commit.
+     */
+    private boolean softCommit = false;
+
+    /**
+     * The fields last indexed for each identifier, from which atomic updates
+     * are made, or null to send every update in full.
+     */
+    private volatile Cache<String, NamedFields> indexedFields;
+
+    private final AtomicLong atomicUpdates = new AtomicLong();
+
+    /**
+     * While fields are remembered, held for an identifier from computing its
+     * atomic update until Solr responds, so that concurrent operations on
+     * one document see each other's effect on the fields remembered.
+     */
+    private final Striped<Lock> locks = Striped.lock(64);
+
     /**
      * Number of threads to use for operating against the index.
      */
@@ -88,55 +133,272 @@ public class SolrIndexer extends AsynchIndexer<NamedFields, UpdateResponse> {
 
             @Override
             public UpdateResponse call() {
+                final Iterable<Lock> held = lock(singleton(id));
                 try {
                     LOGGER.debug(
                             "Executing request to Solr index for identifier: {} with fields: {}",
                             id, fields);
-                    // add the identifier of the resource as a unique index-key
-                    fields.put("id", asList(id));
-                    // pack the fields into a Solr input doc
-                    final SolrInputDocument inputDoc = fromMap(fields);
+                    final boolean atomic = remembered(id);
+                    final SolrInputDocument inputDoc = toUpdate(id, fields);
+                    if (inputDoc == null) {
+                        LOGGER.debug("No fields changed for: {}", id);
+                        return unchanged();
+                    }
                     LOGGER.debug("Created SolrInputDocument: {}", inputDoc);
 
-                    final UpdateResponse resp = server.add(inputDoc);
+                    UpdateResponse resp;
+                    try {
+                        resp = add(inputDoc);
+                    } catch (final SolrServerException | IOException e) {
+                        if (!atomic) {
+                            throw e;
+                        }
+                        LOGGER.warn("Atomic update failed for: {}: {}", id, e);
+                        resp = null;
+                    }
+                    if (atomic && (resp == null || resp.getStatus() != 0)) {
+                        // the index may not hold what we remember of it
+                        LOGGER.warn("Sending whole document for: {}", id);
+                        forget(id);
+                        resp = add(toDocument(id, fields));
+                    }
                     if (resp.getStatus() == 0) {
                         LOGGER.debug("Update request was successful for: {}",
                                 id);
+                        indexed(id, fields);
                     } else {
                         LOGGER.error(
                                 "Update request returned error code: {} for identifier: {}",
                                 resp.getStatus(), id);
+                        forget(id);
                     }
                     LOGGER.debug("Received result from Solr request.");
                     return resp;
                 } catch (final SolrServerException | IOException e) {
                     LOGGER.error("Update exception: {}!", e);
+                    forget(id);
                     throw propagate(e);
+                } finally {
+                    unlock(held);
                 }
             }
         };
     }
 
+    /**
+     * Packs the fields into a Solr input doc with the identifier of the
+     * resource as a unique index-key. The fields are not changed, as other
+     * indexers may be reading them. Visible for benchmarking.
+     */
+    static SolrInputDocument toDocument(final String id,
+        final Map<String, Collection<String>> fields) {
+        final SolrInputDocument doc = document(fields.size() + 1);
+        addFields(doc, fields);
+        final SolrInputField idField = new SolrInputField(ID_FIELD);
+        idField.setValue(id, INDEX_TIME_BOOST);
+        doc.put(ID_FIELD, idField);
+        return doc;
+    }
+
+    private UpdateResponse add(final SolrInputDocument doc)
+        throws SolrServerException, IOException {
+        return commitWithin > 0 ? server.add(doc, commitWithin) : server
+                .add(doc);
+    }
+
+    private UpdateResponse add(final Collection<SolrInputDocument> docs)
+        throws SolrServerException, IOException {
+        return commitWithin > 0 ? server.add(docs, commitWithin) : server
+                .add(docs);
+    }
+
+    /**
+     * @return whether the fields last indexed for the identifier are known,
+     *         so that an update to it will be sent as an atomic update
+     */
+    private boolean remembered(final String id) {
+        final Cache<String, NamedFields> indexed = indexedFields;
+        return indexed != null && indexed.getIfPresent(id) != null;
+    }
+
+    /**
+     * @return an atomic update of the fields that changed since those last
+     *         indexed, the whole document if those are not known, or null if
+     *         no field changed
+     */
+    private SolrInputDocument toUpdate(final String id,
+        final NamedFields fields) {
+        final Cache<String, NamedFields> indexed = indexedFields;
+        final NamedFields previous =
+            indexed == null ? null : indexed.getIfPresent(id);
+        if (previous == null) {
+            return toDocument(id, fields);
+        }
+        final SolrInputDocument delta = toDelta(id, previous, fields);
+        if (delta != null) {
+            atomicUpdates.incrementAndGet();
+        }
+        return delta;
+    }
+
+    /**
+     * Makes an atomic update from the fields that differ between two
+     * versions of a document. Values appended to a field are added, a field
+     * that is gone is set to null, and any other changed field is set anew.
+     *
+     * @param id
+     * @param previous the fields last indexed
+     * @param fields the fields to index
+     * @return the update, or null if no field changed
+     */
+    static SolrInputDocument toDelta(final String id,
+        final Map<String, Collection<String>> previous,
+        final Map<String, Collection<String>> fields) {
+        final SolrInputDocument doc = new SolrInputDocument();
+        for (final Map.Entry<String, Collection<String>> entry : fields
+                .entrySet()) {
+            final String name = entry.getKey();
+            final Collection<String> values = entry.getValue();
+            final Collection<String> before = previous.get(name);
+            if (ID_FIELD.equals(name) || values.equals(before)) {
+                continue;
+            }
+            final List<String> appended = appended(before, values);
+            doc.put(name, appended == null ? operation(name, "set", values)
+                    : operation(name, "add", appended));
+        }
+        for (final String name : previous.keySet()) {
+            if (!fields.containsKey(name) && !ID_FIELD.equals(name)) {
+                doc.put(name, operation(name, "set", null));
+            }
+        }
+        if (doc.isEmpty()) {
+            return null;
+        }
+        final SolrInputField idField = new SolrInputField(ID_FIELD);
+        idField.setValue(id, INDEX_TIME_BOOST);
+        doc.put(ID_FIELD, idField);
+        return doc;
+    }
+
+    /**
+     * @return the values following the values before, or null if the values
+     *         do not begin with the values before
+     */
+    private static List<String> appended(final Collection<String> before,
+        final Collection<String> values) {
+        if (before == null || before.size() >= values.size()) {
+            return null;
+        }
+        final Iterator<String> beforeValues = before.iterator();
+        final Iterator<String> allValues = values.iterator();
+        while (beforeValues.hasNext()) {
+            if (!beforeValues.next().equals(allValues.next())) {
+                return null;
+            }
+        }
+        final List<String> appended =
+            new ArrayList<>(values.size() - before.size());
+        while (allValues.hasNext()) {
+            appended.add(allValues.next());
+        }
+        return appended;
+    }
+
+    private static SolrInputField operation(final String name,
+        final String operation, final Object value) {
+        final SolrInputField field = new SolrInputField(name);
+        field.setValue(singletonMap(operation, value), INDEX_TIME_BOOST);
+        return field;
+    }
+
+    /**
+     * @return a successful response to an update that was not sent
+     */
+    private static UpdateResponse unchanged() {
+        final NamedList<Object> header = new NamedList<>();
+        header.add("status", 0);
+        header.add("QTime", 0);
+        final NamedList<Object> response = new NamedList<>();
+        response.add("responseHeader", header);
+        final UpdateResponse resp = new UpdateResponse();
+        resp.setResponse(response);
+        return resp;
+    }
+
+    private void indexed(final String id, final NamedFields fields) {
+        final Cache<String, NamedFields> indexed = indexedFields;
+        if (indexed != null) {
+            indexed.put(id, fields);
+        }
+    }
+
+    private void forget(final String id) {
+        final Cache<String, NamedFields> indexed = indexedFields;
+        if (indexed != null) {
+            indexed.invalidate(id);
+        }
+    }
+
+    private void forgetAll(final Collection<String> ids) {
+        final Cache<String, NamedFields> indexed = indexedFields;
+        if (indexed != null) {
+            indexed.invalidateAll(ids);
+        }
+    }
+
+    /**
+     * @return the locks taken for the identifiers, none if fields are not
+     *         remembered
+     */
+    private Iterable<Lock> lock(final Iterable<String> ids) {
+        if (indexedFields == null) {
+            return emptyList();
+        }
+        final Iterable<Lock> held = locks.bulkGet(ids);
+        for (final Lock lock : held) {
+            lock.lock();
+        }
+        return held;
+    }
+
+    private static void unlock(final Iterable<Lock> held) {
+        for (final Lock lock : held) {
+            lock.unlock();
+        }
+    }
+
     protected SolrInputDocument fromMap(final Map<String, Collection<String>> fields) {
         LOGGER.debug("Constructing new SolrInputDocument...");
-        return new SolrInputDocument(transformEntries(fields,
-                collection2solrInputField));
+        final SolrInputDocument doc = document(fields.size());
+        addFields(doc, fields);
+        return doc;
     }
 
-    private static EntryTransformer<String, Collection<String>, SolrInputField> collection2solrInputField =
-        new EntryTransformer<String, Collection<String>, SolrInputField>() {
+    /**
+     * @param size the number of fields the document will hold
+     * @return an empty document that will not need to grow
+     */
+    private static SolrInputDocument document(final int size) {
+        return new SolrInputDocument(new LinkedHashMap<String, SolrInputField>(
+                (int) (size / 0.75f) + 1));
+    }
 
-            @Override
-            public SolrInputField transformEntry(final String key,
-                    final Collection<String> input) {
-                final SolrInputField field = new SolrInputField(key);
-                for (final String value : input) {
-                    LOGGER.debug("Adding value: {} to field: {}", value, key);
-                    field.addValue(value, INDEX_TIME_BOOST);
-                }
-                return field;
-            }
-        };
+    /**
+     * Each field keeps the name instance and the collection of values it is
+     * given, without copying either. Solr reads the values when the document
+     * is sent.
+     */
+    private static void addFields(final SolrInputDocument doc,
+        final Map<String, Collection<String>> fields) {
+        for (final Map.Entry<String, Collection<String>> entry : fields
+                .entrySet()) {
+            final String name = entry.getKey();
+            final SolrInputField field = new SolrInputField(name);
+            field.setValue(entry.getValue(), INDEX_TIME_BOOST);
+            doc.put(name, field);
+        }
+    }
 
     @Override
     public Callable<UpdateResponse> removeSynch(final String pid) {
@@ -145,12 +407,18 @@ public class SolrIndexer extends AsynchIndexer<NamedFields, UpdateResponse> {
 
             @Override
             public UpdateResponse call() {
+                final Iterable<Lock> held = lock(singleton(pid));
                 try {
-                    final UpdateResponse resp = server.deleteById(pid);
+                    forget(pid);
+                    final UpdateResponse resp =
+                        commitWithin > 0 ? server.deleteById(pid, commitWithin)
+                                : server.deleteById(pid);
                     if (resp.getStatus() == 0) {
                         LOGGER.debug("Remove request was successful for: {}",
                                 pid);
-                        server.commit();
+                        if (commitWithin <= 0) {
+                            server.commit();
+                        }
 
                     } else {
                         LOGGER.error(
@@ -161,11 +429,214 @@ public class SolrIndexer extends AsynchIndexer<NamedFields, UpdateResponse> {
                 } catch (final SolrServerException | IOException e) {
                     LOGGER.error("Delete Exception: {}", e);
                     throw propagate(e);
+                } finally {
+                    unlock(held);
                 }
             }
         };
     }
 
+    /**
+     * Sends all documents in a single request. Because the batch is keyed by
+     * identifier, only the last update to each resource is sent.
+     */
+    @Override
+    public ListenableFuture<UpdateResponse> updateAll(
+        final Map<String, NamedFields> contents) {
+        LOGGER.debug("Received batch update for {} identifiers.", contents
+                .size());
+        return executorService.submit(new Callable<UpdateResponse>() {
+
+            @Override
+            public UpdateResponse call() {
+                final Iterable<Lock> held = lock(contents.keySet());
+                try {
+                    return send(contents);
+                } finally {
+                    unlock(held);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends the batch, which must be locked.
+     */
+    private UpdateResponse send(final Map<String, NamedFields> contents) {
+        final List<SolrInputDocument> docs =
+            new ArrayList<>(contents.size());
+        boolean atomic = false;
+        for (final Map.Entry<String, NamedFields> entry : contents
+                .entrySet()) {
+            atomic = atomic || remembered(entry.getKey());
+            final SolrInputDocument doc =
+                toUpdate(entry.getKey(), entry.getValue());
+            if (doc != null) {
+                docs.add(doc);
+            }
+        }
+        if (docs.isEmpty()) {
+            LOGGER.debug("No fields changed in batch.");
+            return unchanged();
+        }
+        try {
+            UpdateResponse resp;
+            try {
+                resp = add(docs);
+            } catch (final SolrServerException | IOException e) {
+                if (!atomic) {
+                    throw e;
+                }
+                LOGGER.warn("Batch with atomic updates failed: {}", e);
+                resp = null;
+            }
+            if (atomic && (resp == null || resp.getStatus() != 0)) {
+                // the index may not hold what we remember of it
+                LOGGER.warn("Sending whole documents for batch of {}.",
+                        contents.size());
+                forgetAll(contents.keySet());
+                docs.clear();
+                for (final Map.Entry<String, NamedFields> entry : contents
+                        .entrySet()) {
+                    docs.add(toDocument(entry.getKey(), entry.getValue()));
+                }
+                resp = add(docs);
+            }
+            if (resp.getStatus() == 0) {
+                for (final Map.Entry<String, NamedFields> entry : contents
+                        .entrySet()) {
+                    indexed(entry.getKey(), entry.getValue());
+                }
+            } else {
+                LOGGER.error(
+                        "Batch update request returned error code: {} for {} documents",
+                        resp.getStatus(), docs.size());
+                forgetAll(contents.keySet());
+            }
+            return resp;
+        } catch (final SolrServerException | IOException e) {
+            LOGGER.error("Batch update exception: {}!", e);
+            forgetAll(contents.keySet());
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * Removes all identifiers in a single request. Without a commitWithin,
+     * one commit is issued for the whole batch.
+     */
+    @Override
+    public ListenableFuture<UpdateResponse> removeAll(
+        final Collection<String> ids) {
+        LOGGER.debug("Received batch removal for {} identifiers.", ids.size());
+        return executorService.submit(new Callable<UpdateResponse>() {
+
+            @Override
+            public UpdateResponse call() {
+                final List<String> idList = new ArrayList<>(ids);
+                final Iterable<Lock> held = lock(idList);
+                try {
+                    forgetAll(idList);
+                    final UpdateResponse resp =
+                        commitWithin > 0 ? server.deleteById(idList,
+                                commitWithin) : server.deleteById(idList);
+                    if (resp.getStatus() == 0) {
+                        if (commitWithin <= 0) {
+                            server.commit();
+                        }
+                    } else {
+                        LOGGER.error(
+                                "Batch remove request has error, code: {} for {} identifiers",
+                                resp.getStatus(), idList.size());
+                    }
+                    return resp;
+                } catch (final SolrServerException | IOException e) {
+                    LOGGER.error("Batch delete exception: {}", e);
+                    throw propagate(e);
+                } finally {
+                    unlock(held);
+                }
+            }
+        });
+    }
+
+    /**
+     * Commits outstanding changes, softly if so configured.
+     */
+    @Override
+    public ListenableFuture<UpdateResponse> flush() {
+        return executorService.submit(new Callable<UpdateResponse>() {
+
+            @Override
+            public UpdateResponse call() {
+                try {
+                    return softCommit ? server.commit(true, true, true)
+                            : server.commit();
+                } catch (final SolrServerException | IOException e) {
+                    LOGGER.error("Commit exception: {}", e);
+                    throw propagate(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Set the time in milliseconds within which Solr should commit changes
+     * sent by this indexer. When set, no explicit commits are issued after
+     * removals, leaving visibility to Solr's commitWithin handling.
+     *
+     * @param commitWithin milliseconds, or -1 to commit explicitly
+     */
+    public void setCommitWithin(final int commitWithin) {
+        this.commitWithin = commitWithin;
+    }
+
+    /**
+     * @return the time in milliseconds within which Solr should commit
+     */
+    public int getCommitWithin() {
+        return commitWithin;
+    }
+
+    /**
+     * @param softCommit whether {@link #flush()} should issue a soft commit
+     */
+    public void setSoftCommit(final boolean softCommit) {
+        this.softCommit = softCommit;
+    }
+
+    /**
+     * Set the number of documents whose indexed fields to remember. An
+     * update to a remembered document is then sent as a Solr atomic update of
+     * only the fields that changed, and not sent at all if none did; other
+     * updates are sent in full. Operations on the same document then run one
+     * at a time, each from computing its update until Solr responds, so that
+     * none is computed against fields an operation in flight is about to
+     * change.
+     * <p>
+     * Atomic updates rebuild each document from its stored fields, so the
+     * Solr schema must store every field this indexer sends (fields only
+     * filled by a copyField must not be stored, or they are copied twice),
+     * and the update log must be enabled. An update that fails is sent again
+     * as the whole document and its remembered fields are dropped, so that a
+     * document the index no longer holds as remembered is repaired. A size of
+     * 0 (the default) disables this.
+     *
+     * @param size
+     */
+    public void setIndexedFieldsCacheSize(final long size) {
+        indexedFields =
+            size > 0 ? CacheBuilder.newBuilder().maximumSize(size)
+                    .<String, NamedFields> build() : null;
+    }
+
+    /**
+     * @return the number of updates sent as atomic updates
+     */
+    public long getAtomicUpdates() {
+        return atomicUpdates.get();
+    }
+
     @Override
     public IndexerType getIndexerType() {
         return NAMEDFIELDS;
@@ -17,35 +17,78 @@
 package org.fcrepo.indexer.sparql;
 
 import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+import static com.google.common.collect.Sets.difference;
+import static com.hp.hpl.jena.graph.Node.ANY;
+import static com.hp.hpl.jena.graph.NodeFactory.createURI;
+import static com.hp.hpl.jena.query.DatasetAccessorFactory.createHTTP;
 import static com.hp.hpl.jena.sparql.util.Context.emptyContext;
 import static com.hp.hpl.jena.update.UpdateExecutionFactory.createRemoteForm;
 import static java.util.concurrent.Executors.newFixedThreadPool;
+import static com.hp.hpl.jena.rdf.model.ModelFactory.createDefaultModel;
+import static java.lang.Math.min;
+import static java.net.URLEncoder.encode;
+import static java.util.Collections.singletonList;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.jena.riot.Lang.TURTLE;
+import static org.apache.jena.riot.RDFDataMgr.read;
+import static org.apache.jena.riot.RDFDataMgr.write;
+import static org.apache.jena.riot.WebContent.contentTypeSPARQLUpdate;
+import static org.apache.jena.riot.WebContent.contentTypeTurtle;
 import static org.fcrepo.indexer.Indexer.IndexerType.RDF;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.locks.Lock;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ListenableFutureTask;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Striped;
+import com.hp.hpl.jena.query.DatasetAccessor;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Node_URI;
 import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.sparql.engine.http.QueryEngineHTTP;
 import com.hp.hpl.jena.sparql.modify.UpdateProcessRemote;
 import com.hp.hpl.jena.sparql.modify.request.QuadDataAcc;
+import com.hp.hpl.jena.sparql.modify.request.UpdateDataDelete;
 import com.hp.hpl.jena.sparql.modify.request.UpdateDataInsert;
+import com.hp.hpl.jena.sparql.modify.request.UpdateDrop;
 import com.hp.hpl.jena.update.UpdateProcessor;
 import com.hp.hpl.jena.update.UpdateRequest;
 
+import org.apache.http.Consts;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 import org.apache.jena.atlas.io.IndentedWriter;
 import org.fcrepo.indexer.AsynchIndexer;
+import org.fcrepo.indexer.Histogram;
 import org.slf4j.Logger;
 
 
@@ -61,14 +104,53 @@ public class SparqlIndexer extends AsynchIndexer<Model, Void> {
     private String queryBase;
     private String updateBase;
     private boolean formUpdates = false;
+    private boolean atomicUpdates = false;
+    private boolean namedGraphs = false;
+    private String graphStoreBase;
+    private boolean diffUpdates = false;
+
+    /**
+     * Default number of objects for which to remember the last indexed
+     * triples.
+     */
+    public static final long DEFAULT_DIFF_CACHE_SIZE = 10000;
+
+    private Cache<String, Set<Triple>> indexedTriples = CacheBuilder
+            .newBuilder().maximumSize(DEFAULT_DIFF_CACHE_SIZE).build();
+
+    private final Striped<Lock> locks = Striped.lock(64);
+
+    private int maxTriplesPerRequest = 0;
+
+    private final Histogram requestSizes = new Histogram();
+
+    private boolean streamingUpdates = false;
+
+    private boolean directHttp = false;
 
     private static final Logger LOGGER = getLogger(SparqlIndexer.class);
 
+    private static final String UTF_8 = "UTF-8";
+
     /**
      * Number of threads to use for operating against the triplestore.
      */
     private static final Integer THREAD_POOL_SIZE = 5;
 
+    private HttpClient httpClient = defaultHttpClient();
+
+    /**
+     * @return a client with a connection for each thread of the pool, rather
+     *         than the default two per route
+     */
+    private static HttpClient defaultHttpClient() {
+        final PoolingClientConnectionManager connectionManager =
+            new PoolingClientConnectionManager();
+        connectionManager.setMaxTotal(THREAD_POOL_SIZE);
+        connectionManager.setDefaultMaxPerRoute(THREAD_POOL_SIZE);
+        return new DefaultHttpClient(connectionManager);
+    }
+
     private ListeningExecutorService executorService =
         listeningDecorator(newFixedThreadPool(THREAD_POOL_SIZE));
 
@@ -81,17 +163,487 @@ public class SparqlIndexer extends AsynchIndexer<Model, Void> {
     public Callable<Void> updateSynch(final String pid,
         final Model model) {
         LOGGER.debug("Received update for: {}", pid);
+        if (diffUpdates) {
+            return diffUpdate(pid, model);
+        }
+        if (namedGraphs) {
+            return replaceGraph(pid, model);
+        }
+        if (atomicUpdates) {
+            return atomicUpdate(pid, model);
+        }
         removeSynch(pid);
+        // send update to server
+        LOGGER.debug("Sending update request for pid: {}", pid);
+        if (maxTriplesPerRequest > 0 || streamingUpdates) {
+            return execInsert(new UpdateRequest(), model, null);
+        }
+        return exec(new UpdateRequest(insertData(model)));
+    }
+
+    /**
+     * Replace the triples about the Fedora object in a single SPARQL Update
+     * request: a delete of all triples with subjects starting with the
+     * object's URI, followed by the insertion of the new triples. No DESCRIBE
+     * query is needed, and the triplestore applies both operations together.
+    **/
+    private Callable<Void> atomicUpdate(final String pid, final Model model) {
+        LOGGER.debug("Sending single update request for pid: {}", pid);
+        return execInsert(scopedRemoval(pid), model, null);
+    }
+
+    private UpdateRequest scopedRemoval(final String pid) {
+        final UpdateRequest request = buildUpdateRequest();
+        for (final String cmd : deleteScoped(pid)) {
+            LOGGER.debug("Executing: {}", cmd);
+            request.add(cmd);
+        }
+        return request;
+    }
+
+    /**
+     * Replace the named graph holding the Fedora object's triples, either
+     * with a PUT via the SPARQL Graph Store Protocol or with a single SPARQL
+     * Update request that drops and re-inserts the graph.
+    **/
+    private Callable<Void> replaceGraph(final String pid, final Model model) {
+        final String graph = graphName(pid);
+        if (graphStoreBase != null) {
+            LOGGER.debug("Putting graph: {} to graph store", graph);
+            return new Callable<Void>() {
+
+                @Override
+                public Void call() throws IOException {
+                    if (directHttp) {
+                        succeeded(putGraphDirect(graph, model));
+                    } else {
+                        buildDatasetAccessor().putModel(graph, model);
+                    }
+                    return null;
+                }
+            };
+        }
+        LOGGER.debug("Sending graph replacement for pid: {}", pid);
+        return execInsert(graphDrop(createURI(graph)), model, createURI(graph));
+    }
+
+    private UpdateRequest graphDrop(final Node graph) {
+        final UpdateRequest request = buildUpdateRequest();
+        request.add(new UpdateDrop(graph, true));
+        return request;
+    }
+
+    /**
+     * Send only the difference between the triples last indexed for the
+     * Fedora object and the provided content, as DELETE DATA and INSERT DATA.
+     * If the last indexed triples are unknown, or either side contains blank
+     * nodes (which cannot be matched across parses), fall back to replacing
+     * the object's triples in a single request.
+    **/
+    private Callable<Void> diffUpdate(final String pid, final Model model) {
+        final Set<Triple> current = model.getGraph().find(ANY, ANY, ANY).toSet();
+        return new Callable<Void>() {
+
+            @Override
+            public Void call() throws IOException {
+                final Lock lock = locks.get(pid);
+                lock.lock();
+                try {
+                    final Set<Triple> previous = indexedTriples.getIfPresent(pid);
+                    final Node graph =
+                        namedGraphs ? createURI(graphName(pid)) : null;
+                    final UpdateRequest request;
+                    final Iterator<Triple> inserts;
+                    final boolean scoped;
+                    if (previous == null || hasBlankNodes(previous)
+                            || hasBlankNodes(current)) {
+                        LOGGER.debug("No usable record of last indexed triples for: {}, replacing all.",
+                                pid);
+                        scoped = !namedGraphs;
+                        request =
+                            namedGraphs ? graphDrop(graph) : scopedRemoval(pid);
+                        inserts = current.iterator();
+                    } else {
+                        scoped = false;
+                        final Set<Triple> removed = difference(previous, current);
+                        final Set<Triple> added = difference(current, previous);
+                        LOGGER.debug("Found {} triples removed and {} added for: {}",
+                                removed.size(), added.size(), pid);
+                        if (removed.isEmpty() && added.isEmpty()) {
+                            return null;
+                        }
+                        request = buildUpdateRequest();
+                        if (!removed.isEmpty()) {
+                            request.add(new UpdateDataDelete(quads(removed, graph)));
+                        }
+                        inserts = added.iterator();
+                    }
+                    final int firstSize = addChunk(request, inserts, graph);
+                    final boolean success =
+                        executeChunks(request, firstSize, inserts, graph);
+                    if (scoped) {
+                        forgetScoped(pid);
+                    }
+                    if (success) {
+                        indexedTriples.put(pid, current);
+                    } else {
+                        indexedTriples.invalidate(pid);
+                        succeeded(false);
+                    }
+                    return null;
+                } catch (final RuntimeException e) {
+                    forgetScoped(pid);
+                    throw e;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+    }
+
+    /**
+     * Forget the triples last indexed for the object and for its hash and
+     * child resources, whose triples a scoped removal deletes along with the
+     * object's, so that their next updates replace them in full.
+     */
+    private void forgetScoped(final String pid) {
+        for (final String indexed : indexedTriples.asMap().keySet()) {
+            if (matches(pid, indexed)) {
+                indexedTriples.invalidate(indexed);
+            }
+        }
+    }
+
+    private static boolean hasBlankNodes(final Set<Triple> triples) {
+        for (final Triple t : triples) {
+            if (t.getSubject().isBlank() || t.getObject().isBlank()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static QuadDataAcc quads(final Set<Triple> triples,
+        final Node graph) {
+        final QuadDataAcc acc = new QuadDataAcc();
+        if (graph != null) {
+            acc.setGraph(graph);
+        }
+        for (final Triple t : triples) {
+            acc.addTriple(t);
+        }
+        return acc;
+    }
+
+    /**
+     * Drop the named graph holding the Fedora object's triples, and nothing
+     * else: finding the graphs of its child resources would need a pattern
+     * matched against every graph in the triplestore. Those graphs are
+     * dropped by the removals of the children themselves.
+    **/
+    private Callable<Void> dropGraph(final String pid) {
+        final String graph = graphName(pid);
+        if (graphStoreBase != null) {
+            LOGGER.debug("Deleting graph: {} from graph store", graph);
+            return new Callable<Void>() {
+
+                @Override
+                public Void call() throws IOException {
+                    if (directHttp) {
+                        succeeded(deleteGraphDirect(graph));
+                    } else {
+                        buildDatasetAccessor().deleteModel(graph);
+                    }
+                    return null;
+                }
+            };
+        }
+        return execOnce(graphDrop(createURI(graph)));
+    }
+
+    /**
+     * @return the name of the graph in which the triples of the Fedora object
+     *         with this URI are stored
+     */
+    protected String graphName(final String pid) {
+        return pid;
+    }
+
+    /**
+     * Add up to {@link #maxTriplesPerRequest} triples to a request as INSERT
+     * DATA.
+     *
+     * @return the number of triples added
+     */
+    private int addChunk(final UpdateRequest request,
+        final Iterator<Triple> triples, final Node graph) {
+        final QuadDataAcc acc = new QuadDataAcc();
+        if (graph != null) {
+            acc.setGraph(graph);
+        }
+        int size = 0;
+        while (triples.hasNext()
+                && (maxTriplesPerRequest <= 0 || size < maxTriplesPerRequest)) {
+            acc.addTriple(triples.next());
+            size++;
+        }
+        if (size > 0) {
+            request.add(new UpdateDataInsert(acc));
+        }
+        return size;
+    }
+
+    /**
+     * Execute a request to which the first chunk of triples has already been
+     * added, then insert the remaining triples chunk by chunk, so that only
+     * one chunk is held in a request at a time. Stops at the first failure.
+     *
+     * @return whether all requests succeeded
+     */
+    private boolean executeChunks(final UpdateRequest first,
+        final int firstSize, final Iterator<Triple> triples, final Node graph) {
+        requestSizes.update(firstSize);
+        boolean success = execute(first);
+        while (success && triples.hasNext()) {
+            final UpdateRequest next = buildUpdateRequest();
+            requestSizes.update(addChunk(next, triples, graph));
+            success = execute(next);
+        }
+        return success;
+    }
+
+    /**
+     * The model's triples are copied on the calling thread, since the task
+     * runs on a thread of {@link #executorService}. When they span several
+     * chunks, only the first is sent in the same request as any removal, so
+     * the replacement is not atomic: a failure part way leaves the object
+     * with only the chunks already sent, until its next update.
+     *
+     * @return a task that executes the request with the model's triples
+     *         inserted, in as many chunks as needed
+     */
+    private Callable<Void> execInsert(final UpdateRequest request,
+        final Model model, final Node graph) {
+        if (streamingUpdates && !formUpdates) {
+            return new Callable<Void>() {
+
+                @Override
+                public Void call() throws IOException {
+                    succeeded(executeStreaming(request, model, graph));
+                    return null;
+                }
+            };
+        }
+        final List<Triple> triples = model.getGraph().find(ANY, ANY, ANY).toList();
+        return new Callable<Void>() {
+
+            @Override
+            public Void call() throws IOException {
+                final Iterator<Triple> chunks = triples.iterator();
+                final int firstSize = addChunk(request, chunks, graph);
+                succeeded(executeChunks(request, firstSize, chunks, graph));
+                return null;
+            }
+        };
+    }
+
+    /**
+     * POST the request, followed by an INSERT DATA of the model's triples, as
+     * SPARQL Update requests whose bodies are written as the triples are
+     * iterated: one request, or with {@link #maxTriplesPerRequest} set, as
+     * many as needed, of which only the first carries the request's own
+     * operations. Stops at the first failure.
+     *
+     * @return whether all requests succeeded
+     */
+    private boolean executeStreaming(final UpdateRequest request,
+        final Model model, final Node graph) {
+        final long size = model.size();
+        final long limit = maxTriplesPerRequest > 0 ? maxTriplesPerRequest : size;
+        String prefix = request.getOperations().isEmpty() ? null : request.toString();
+        long skip = 0;
+        do {
+            final HttpPost post = new HttpPost(updateBase);
+            final EntityTemplate entity =
+                new EntityTemplate(new StreamingInsert(prefix, model.getGraph(),
+                        skip, limit, graph));
+            entity.setContentType(contentTypeSPARQLUpdate + "; charset=UTF-8");
+            entity.setChunked(true);
+            post.setEntity(entity);
+            requestSizes.update(min(limit, size - skip));
+            if (!send(post, "streaming Sparql update", false)) {
+                return false;
+            }
+            prefix = null;
+            skip += limit;
+        } while (skip < size);
+        return true;
+    }
+
+    /**
+     * POST the request through {@link #httpClient}, as a form if
+     * {@link #formUpdates} is set.
+     *
+     * @return whether the request succeeded
+     */
+    private boolean executeDirect(final UpdateRequest update) {
+        final HttpPost post = new HttpPost(updateBase);
+        if (formUpdates) {
+            post.setEntity(new UrlEncodedFormEntity(singletonList(
+                    new BasicNameValuePair("update", update.toString())),
+                    Consts.UTF_8));
+        } else {
+            post.setEntity(new StringEntity(update.toString(), ContentType
+                    .create(contentTypeSPARQLUpdate, UTF_8)));
+        }
+        return send(post, "Sparql update/remove", false);
+    }
+
+    /**
+     * PUT the model as the named graph through {@link #httpClient}, using the
+     * SPARQL Graph Store Protocol.
+     *
+     * @return whether the request succeeded
+     */
+    private boolean putGraphDirect(final String graph, final Model model) {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        write(body, model, TURTLE);
+        final HttpPut put = new HttpPut(graphStoreUri(graph));
+        put.setEntity(new ByteArrayEntity(body.toByteArray(), ContentType
+                .create(contentTypeTurtle, UTF_8)));
+        return send(put, "graph store PUT", false);
+    }
+
+    /**
+     * DELETE the named graph through {@link #httpClient}, using the SPARQL
+     * Graph Store Protocol. A graph that does not exist counts as deleted.
+     *
+     * @return whether the request succeeded
+     */
+    private boolean deleteGraphDirect(final String graph) {
+        return send(new HttpDelete(graphStoreUri(graph)), "graph store DELETE",
+                true);
+    }
+
+    private String graphStoreUri(final String graph) {
+        try {
+            return graphStoreBase + "?graph=" + encode(graph, UTF_8);
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Execute the request through {@link #httpClient}, discarding the
+     * response body.
+     *
+     * @param description for logging
+     * @param notFoundOk whether a 404 response counts as success
+     * @return whether the request succeeded
+     */
+    private boolean send(final HttpRequestBase request,
+        final String description, final boolean notFoundOk) {
+        try {
+            final HttpResponse response = httpClient.execute(request);
+            EntityUtils.consume(response.getEntity());
+            final int status = response.getStatusLine().getStatusCode();
+            if ((status < 200 || status >= 300)
+                    && !(notFoundOk && status == SC_NOT_FOUND)) {
+                LOGGER.error("Error executing {}: {}", description, response
+                        .getStatusLine());
+                return false;
+            }
+            return true;
+        } catch (final IOException e) {
+            LOGGER.error("Error executing " + description + "!", e);
+            request.abort();
+            return false;
+        }
+    }
+
+    /**
+     * Execute a DESCRIBE query through {@link #httpClient}.
+     *
+     * @return the triples described
+     */
+    private Iterator<Triple> describeDirect(final String describeQuery) {
+        try {
+            final HttpGet get =
+                new HttpGet(queryBase + "?query="
+                        + encode(describeQuery, UTF_8));
+            get.addHeader("Accept", contentTypeTurtle);
+            final HttpResponse response = httpClient.execute(get);
+            final int status = response.getStatusLine().getStatusCode();
+            if (status < 200 || status >= 300) {
+                EntityUtils.consume(response.getEntity());
+                throw new IOException("Error executing Sparql query: "
+                        + response.getStatusLine());
+            }
+            final Model described = createDefaultModel();
+            try (InputStream in = response.getEntity().getContent()) {
+                read(described, in, TURTLE);
+            }
+            return described.getGraph().find(ANY, ANY, ANY);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return a task that executes the request when called
+     */
+    private Callable<Void> execOnce(final UpdateRequest request) {
+        return new Callable<Void>() {
+
+            @Override
+            public Void call() throws IOException {
+                succeeded(execute(request));
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Fail the task, so that callers are not told a request succeeded when
+     * the triplestore refused it.
+     *
+     * @throws IOException if the request did not succeed
+     */
+    private static void succeeded(final boolean success) throws IOException {
+        if (!success) {
+            throw new IOException("Error executing Sparql update/remove!");
+        }
+    }
+
+    /**
+     * Every pattern binds the resource itself, so the triplestore can answer
+     * from its indexes instead of scanning every subject. As with the DESCRIBE
+     * based removal, hash and child subjects are found through the triples
+     * linking them to or from the resource, so they are deleted before the
+     * resource's own triples.
+     *
+     * @return commands deleting all triples whose subject is the resource or
+     *         {@link #matches(String, String)} it
+     */
+    private static String[] deleteScoped(final String subject) {
+        final String children = "FILTER(STRSTARTS(STR(?s), \"" + subject
+                + "/\") || STRSTARTS(STR(?s), \"" + subject + "#\"))";
+        return new String[] {
+                "DELETE { ?s ?p ?o } WHERE { <" + subject + "> ?l ?s . ?s ?p ?o "
+                        + children + " }",
+                "DELETE { ?s ?p ?o } WHERE { ?s ?l <" + subject + "> . ?s ?p ?o "
+                        + children + " }",
+                "DELETE WHERE { <" + subject + "> ?p ?o }" };
+    }
+
+    private static UpdateDataInsert insertData(final Model model) {
         // build a list of triples
         final StmtIterator triples = model.listStatements();
         final QuadDataAcc add = new QuadDataAcc();
         while ( triples.hasNext() ) {
             add.addTriple( triples.nextStatement().asTriple() );
         }
-
-        // send update to server
-        LOGGER.debug("Sending update request for pid: {}", pid);
-        return exec(new UpdateRequest(new UpdateDataInsert(add)));
+        return new UpdateDataInsert(add);
     }
 
     /**
@@ -102,10 +654,42 @@ public class SparqlIndexer extends AsynchIndexer<Model, Void> {
     public Callable<Void> removeSynch(final String subject) {
 
         LOGGER.debug("Received remove for: {}", subject);
+        if (diffUpdates) {
+            final Callable<Void> removal =
+                namedGraphs ? dropGraph(subject) : execOnce(scopedRemoval(subject));
+            return new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    final Lock lock = locks.get(subject);
+                    lock.lock();
+                    try {
+                        return removal.call();
+                    } finally {
+                        if (namedGraphs) {
+                            indexedTriples.invalidate(subject);
+                        } else {
+                            forgetScoped(subject);
+                        }
+                        lock.unlock();
+                    }
+                }
+            };
+        }
+        if (namedGraphs) {
+            return dropGraph(subject);
+        }
         // find triples/quads to delete
         final String describeQuery = "DESCRIBE <" + subject + ">";
-        final QueryEngineHTTP qexec = buildQueryEngineHTTP(describeQuery);
-        final Iterator<Triple> results = qexec.execDescribeTriples();
+        final QueryEngineHTTP qexec;
+        final Iterator<Triple> results;
+        if (directHttp) {
+            qexec = null;
+            results = describeDirect(describeQuery);
+        } else {
+            qexec = buildQueryEngineHTTP(describeQuery);
+            results = qexec.execDescribeTriples();
+        }
 
         // build list of triples to delete
         final Set<String> uris = new HashSet<>();
@@ -128,7 +712,9 @@ public class SparqlIndexer extends AsynchIndexer<Model, Void> {
                 }
             }
         }
-        qexec.close();
+        if (qexec != null) {
+            qexec.close();
+        }
 
         // build update commands
         final UpdateRequest del = buildUpdateRequest();
@@ -171,25 +757,8 @@ public class SparqlIndexer extends AsynchIndexer<Model, Void> {
         final Callable<Void> callable = new Callable<Void>() {
 
             @Override
-            public Void call() {
-
-                if (formUpdates) {
-                    // form updates
-                    final UpdateProcessor proc =
-                        createRemoteForm(update, updateBase);
-                    proc.execute();
-                } else {
-                    // normal SPARQL updates
-                    final UpdateProcessRemote proc =
-                        new UpdateProcessRemote(update, updateBase,
-                                emptyContext);
-                    try {
-                        proc.execute();
-                    } catch (final Exception e) {
-                        LOGGER.error(
-                                "Error executing Sparql update/remove!", e);
-                    }
-                }
+            public Void call() throws IOException {
+                succeeded(execute(update));
                 return null;
             }
         };
@@ -221,6 +790,36 @@ public class SparqlIndexer extends AsynchIndexer<Model, Void> {
         return callable;
     }
 
+    /**
+     * Note: Protected for Unit Tests to overwrite.
+     *
+     * @return whether the request succeeded
+     */
+    protected boolean execute(final UpdateRequest update) {
+        if (directHttp) {
+            return executeDirect(update);
+        }
+        if (formUpdates) {
+            // form updates
+            final UpdateProcessor proc =
+                createRemoteForm(update, updateBase);
+            proc.execute();
+        } else {
+            // normal SPARQL updates
+            final UpdateProcessRemote proc =
+                new UpdateProcessRemote(update, updateBase,
+                        emptyContext);
+            try {
+                proc.execute();
+            } catch (final Exception e) {
+                LOGGER.error(
+                        "Error executing Sparql update/remove!", e);
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public IndexerType getIndexerType() {
         return RDF;
@@ -233,6 +832,96 @@ public class SparqlIndexer extends AsynchIndexer<Model, Void> {
         this.formUpdates = b;
     }
 
+    /**
+     * Set whether to replace an object's triples with a single SPARQL Update
+     * request instead of a DESCRIBE query followed by separate delete and
+     * insert requests.
+    **/
+    public void setAtomicUpdates( final boolean b ) {
+        this.atomicUpdates = b;
+    }
+
+    /**
+     * Set whether to store each object's triples in a named graph of its own,
+     * so that updates replace that graph and removals drop it. Unlike the
+     * default removal, removing a container does not remove the triples of
+     * its children, which are in graphs of their own.
+    **/
+    public void setNamedGraphs( final boolean b ) {
+        this.namedGraphs = b;
+    }
+
+    /**
+     * Set base URL for SPARQL Graph Store Protocol requests. If set, named
+     * graphs are replaced with PUT and removed with DELETE instead of SPARQL
+     * Update.
+    **/
+    public void setGraphStoreBase( final String url ) {
+        this.graphStoreBase = url;
+    }
+
+    /**
+     * Set whether to send only the triples that changed since an object was
+     * last indexed by this indexer.
+    **/
+    public void setDiffUpdates( final boolean b ) {
+        this.diffUpdates = b;
+    }
+
+    /**
+     * Set the number of objects for which to remember the last indexed
+     * triples. Objects beyond this are replaced in full on their next update.
+    **/
+    public void setDiffCacheSize( final long size ) {
+        this.indexedTriples = CacheBuilder.newBuilder().maximumSize(size).build();
+    }
+
+    /**
+     * Set whether to write inserted triples straight into the body of the
+     * HTTP request as they are serialized, instead of first building the
+     * whole request in memory. Not used with form updates. Objects larger
+     * than {@link #setMaxTriplesPerRequest(int)} are streamed over several
+     * requests.
+    **/
+    public void setStreamingUpdates( final boolean b ) {
+        this.streamingUpdates = b;
+    }
+
+    /**
+     * Set the HttpClient used for streaming updates, and for all requests
+     * when directHttp is set.
+    **/
+    public void setHttpClient( final HttpClient client ) {
+        this.httpClient = client;
+    }
+
+    /**
+     * Set whether to send SPARQL Update requests, form updates, DESCRIBE
+     * queries and Graph Store Protocol requests through the configured
+     * HttpClient instead of Jena's own HTTP handling, e.g. to share an {@link
+     * org.fcrepo.indexer.HttpTransport}.
+    **/
+    public void setDirectHttp( final boolean b ) {
+        this.directHttp = b;
+    }
+
+    /**
+     * Set the maximum number of triples to insert in one request. Larger
+     * objects are inserted over several requests, so their replacement is no
+     * longer atomic. A value of 0 (the default) inserts all triples in one
+     * request.
+    **/
+    public void setMaxTriplesPerRequest( final int max ) {
+        this.maxTriplesPerRequest = max;
+    }
+
+    /**
+     * @return the distribution of triples inserted per request
+     */
+    public Histogram getRequestSizes() {
+        return requestSizes;
+    }
+
     /**
      * Set base URL for SPARQL Query requests.
     **/
@@ -259,6 +948,13 @@ public class SparqlIndexer extends AsynchIndexer<Model, Void> {
         return new QueryEngineHTTP( queryBase, describeQuery );
     }
 
+    /**
+     * Note: Protected for Unit Tests to overwrite.
+     */
+    protected DatasetAccessor buildDatasetAccessor() {
+        return createHTTP(graphStoreBase);
+    }
+
     /**
      * Note: Protected for Unit Tests to overwrite.
      */
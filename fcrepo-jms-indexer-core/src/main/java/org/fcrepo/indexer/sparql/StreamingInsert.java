@@ -0,0 +1,119 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer.sparql;
+
+import static com.hp.hpl.jena.graph.Node.ANY;
+import static org.apache.jena.riot.out.NodeFmtLib.str;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.http.entity.ContentProducer;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Writes a SPARQL Update request consisting of optional leading operations
+ * and an INSERT DATA of triples, serializing each triple straight to the
+ * output as it is taken from the iterator. No intermediate representation of
+ * the request is built, so memory use does not grow with the number of
+ * triples. The triples are found afresh on each write, so the body is the
+ * same if HttpClient writes it again to retry the request.
+ */
+public class StreamingInsert implements ContentProducer {
+
+    private final String prefix;
+
+    private final Graph triples;
+
+    private final long skip;
+
+    private final long limit;
+
+    private final Node graph;
+
+    /**
+     * @param prefix operations to precede the insertion, or null
+     * @param triples the triples to insert
+     * @param graph the graph into which to insert, or null for the default
+     *        graph
+     */
+    public StreamingInsert(final String prefix, final Graph triples,
+        final Node graph) {
+        this(prefix, triples, 0, 0, graph);
+    }
+
+    /**
+     * @param prefix operations to precede the insertion, or null
+     * @param triples the triples from which to insert
+     * @param skip the number of triples to pass over before inserting
+     * @param limit the maximum number of triples to insert, or 0 for all
+     * @param graph the graph into which to insert, or null for the default
+     *        graph
+     */
+    public StreamingInsert(final String prefix, final Graph triples,
+        final long skip, final long limit, final Node graph) {
+        this.prefix = prefix;
+        this.triples = triples;
+        this.skip = skip;
+        this.limit = limit;
+        this.graph = graph;
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        final Writer w = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+        if (prefix != null && !prefix.trim().isEmpty()) {
+            w.write(prefix.trim());
+            w.write(" ;\n");
+        }
+        w.write("INSERT DATA {\n");
+        if (graph != null) {
+            w.write("GRAPH ");
+            w.write(str(graph));
+            w.write(" {\n");
+        }
+        final ExtendedIterator<Triple> found = triples.find(ANY, ANY, ANY);
+        try {
+            for (long i = 0; i < skip && found.hasNext(); i++) {
+                found.next();
+            }
+            for (long i = 0; (limit <= 0 || i < limit) && found.hasNext(); i++) {
+                final Triple t = found.next();
+                w.write(str(t.getSubject()));
+                w.write(' ');
+                w.write(str(t.getPredicate()));
+                w.write(' ');
+                w.write(str(t.getObject()));
+                w.write(" .\n");
+            }
+        } finally {
+            found.close();
+        }
+        if (graph != null) {
+            w.write("}\n");
+        }
+        w.write("}\n");
+        w.flush();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+
+public class EventCoalescerTest {
+
+    private static final long WINDOW = 100;
+
+    private static final long WAIT = 2000;
+
+    @Mock
+    private ResourceEventHandler mockHandler;
+
+    private EventCoalescer testCoalescer;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        testCoalescer = new EventCoalescer(WINDOW, mockHandler);
+    }
+
+    @After
+    public void tearDown() {
+        testCoalescer.shutdown();
+    }
+
+    @Test
+    public void testBurstOfUpdates() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            testCoalescer.offer("/test", false);
+        }
+        verify(mockHandler, timeout(WAIT)).handle("/test", false);
+        Thread.sleep(2 * WINDOW);
+        verify(mockHandler).handle("/test", false);
+        assertEquals(20, testCoalescer.getEventsReceived());
+        assertEquals(1, testCoalescer.getOperationsIssued());
+        assertEquals(0, testCoalescer.getPendingCount());
+    }
+
+    @Test
+    public void testRemovalSupersedesUpdates() throws InterruptedException {
+        testCoalescer.offer("/test", false);
+        testCoalescer.offer("/test", true);
+        testCoalescer.offer("/test", true);
+        verify(mockHandler, timeout(WAIT)).handle("/test", true);
+        Thread.sleep(2 * WINDOW);
+        verify(mockHandler, never()).handle("/test", false);
+    }
+
+    @Test
+    public void testRecreationAfterRemoval() {
+        testCoalescer.offer("/test", true);
+        testCoalescer.offer("/test", false);
+        // the removal is released as soon as the re-creation arrives
+        assertEquals(1, testCoalescer.getOperationsIssued());
+        verify(mockHandler, timeout(WAIT)).handle("/test", false);
+        final InOrder order = inOrder(mockHandler);
+        order.verify(mockHandler).handle("/test", true);
+        order.verify(mockHandler).handle("/test", false);
+        assertEquals(2, testCoalescer.getOperationsIssued());
+    }
+
+    @Test
+    public void testRecreationBehindUpdateInFlight() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(3);
+        final List<Boolean> handled = new CopyOnWriteArrayList<>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        testCoalescer.shutdown();
+        testCoalescer = new EventCoalescer(WINDOW, new ResourceEventHandler() {
+
+            @Override
+            public void handle(final String pid, final Boolean removal) {
+                if (running.incrementAndGet() > 1) {
+                    overlapped.set(true);
+                }
+                if (handled.isEmpty()) {
+                    started.countDown();
+                    try {
+                        proceed.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                handled.add(removal);
+                running.decrementAndGet();
+                finished.countDown();
+            }
+        });
+        testCoalescer.offer("/test", false);
+        assertTrue(started.await(WAIT, MILLISECONDS));
+        // the update is still being handled when the removal and the
+        // re-creation arrive
+        testCoalescer.offer("/test", true);
+        testCoalescer.offer("/test", false);
+        Thread.sleep(2 * WINDOW);
+        assertTrue(handled.isEmpty());
+        proceed.countDown();
+        assertTrue(finished.await(WAIT, MILLISECONDS));
+        assertEquals(asList(false, true, false), handled);
+        assertFalse(overlapped.get());
+    }
+
+    @Test
+    public void testDistinctIdentifiers() {
+        testCoalescer.offer("/a", false);
+        testCoalescer.offer("/b", false);
+        verify(mockHandler, timeout(WAIT)).handle("/a", false);
+        verify(mockHandler, timeout(WAIT)).handle("/b", false);
+    }
+}
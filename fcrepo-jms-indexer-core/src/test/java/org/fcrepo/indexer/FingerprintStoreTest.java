@@ -0,0 +1,158 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static com.google.common.collect.ImmutableMap.of;
+import static com.hp.hpl.jena.rdf.model.ModelFactory.createDefaultModel;
+import static com.hp.hpl.jena.rdf.model.ResourceFactory.createProperty;
+import static com.hp.hpl.jena.rdf.model.ResourceFactory.createResource;
+import static java.io.File.createTempFile;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+public class FingerprintStoreTest {
+
+    private File file;
+
+    private FingerprintStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = createTempFile("fingerprints", ".bin");
+        store = new FingerprintStore(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        file.delete();
+    }
+
+    @Test
+    public void testUnchanged() throws IOException {
+        assertFalse(store.unchanged("solr", "a", 1));
+        store.put("solr", "a", 1);
+        assertTrue(store.unchanged("solr", "a", 1));
+        assertFalse(store.unchanged("solr", "a", 2));
+        assertFalse(store.unchanged("elastic", "a", 1));
+        assertEquals(0.25, store.getSkipRatio(), 0);
+    }
+
+    @Test
+    public void testRecordsOnlyLatestConfirmedUpdate() throws IOException {
+        store.put("solr", "a", 1);
+        final long first = store.sending("solr", "a");
+        // until confirmed, what the index holds is unknown
+        assertFalse(store.unchanged("solr", "a", 1));
+        final long second = store.sending("solr", "a");
+        assertFalse(store.put("solr", "a", 2, first));
+        assertFalse(store.unchanged("solr", "a", 2));
+        assertTrue(store.put("solr", "a", 3, second));
+        assertTrue(store.unchanged("solr", "a", 3));
+    }
+
+    @Test
+    public void testForgetSupersedesUpdateInFlight() throws IOException {
+        final long version = store.sending("solr", "a");
+        store.forget("solr", "a");
+        assertFalse(store.put("solr", "a", 1, version));
+        assertFalse(store.unchanged("solr", "a", 1));
+    }
+
+    @Test
+    public void testSurvivesRestart() throws IOException {
+        store.put("solr", "a", 1);
+        store.put("solr", "b", 2);
+        store.put("solr", "a", 3);
+        store.forget("solr", "b");
+        store.close();
+        store = new FingerprintStore(file);
+        assertEquals(1, store.size());
+        assertTrue(store.unchanged("solr", "a", 3));
+        assertFalse(store.unchanged("solr", "b", 2));
+    }
+
+    @Test
+    public void testIgnoresIncompleteRecord() throws IOException {
+        store.put("solr", "a", 1);
+        store.close();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] {1, 0, 5, 'b'});
+        }
+        store = new FingerprintStore(file);
+        assertEquals(1, store.size());
+        assertTrue(store.unchanged("solr", "a", 1));
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        store.put("solr", "a", 1);
+        store.clear();
+        store.close();
+        store = new FingerprintStore(file);
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testFieldsFingerprint() {
+        final NamedFields fields =
+            new NamedFields(of("title", (Collection<String>) asList("A"),
+                    "creator", asList("B", "C")));
+        final NamedFields same =
+            NamedFields.builder().field("creator", "B", "C").field("title",
+                    "A").build();
+        assertEquals(FingerprintStore.fingerprint(fields), FingerprintStore
+                .fingerprint(same));
+        assertNotEquals(FingerprintStore.fingerprint(fields),
+                FingerprintStore.fingerprint(fields.with("creator",
+                        asList("C", "B"))));
+        assertNotEquals(FingerprintStore.fingerprint(fields),
+                FingerprintStore.fingerprint(fields.with("creator",
+                        asList("BC"))));
+    }
+
+    @Test
+    public void testRdfFingerprint() {
+        final Model rdf = createDefaultModel();
+        rdf.add(createResource("info:a"), createProperty("info:p"), "x");
+        rdf.add(createResource("info:a"), createProperty("info:q"), "y");
+        final Model same = createDefaultModel();
+        same.add(createResource("info:a"), createProperty("info:q"), "y");
+        same.add(createResource("info:a"), createProperty("info:p"), "x");
+        assertEquals(FingerprintStore.fingerprint(rdf), FingerprintStore
+                .fingerprint(same));
+        same.add(createResource("info:a"), createProperty("info:p"), "z");
+        assertNotEquals(FingerprintStore.fingerprint(rdf), FingerprintStore
+                .fingerprint(same));
+        assertNull(FingerprintStore.fingerprint((Object) "text"));
+    }
+}
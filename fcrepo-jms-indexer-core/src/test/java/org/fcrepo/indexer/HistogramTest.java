@@ -0,0 +1,44 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testBuckets() {
+        final Histogram histogram = new Histogram();
+        for (final long value : new long[] {0, 1, 2, 3, 4, 7, 8}) {
+            histogram.update(value);
+        }
+        assertArrayEquals(new long[] {1, 1, 2, 2, 1}, histogram.getBuckets());
+        assertEquals(7, histogram.getCount());
+        assertEquals(25, histogram.getTotal());
+        assertEquals(8, histogram.getMax());
+    }
+
+    @Test
+    public void testEmpty() {
+        final Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getMean(), 0);
+        assertArrayEquals(new long[] {0}, histogram.getBuckets());
+    }
+}
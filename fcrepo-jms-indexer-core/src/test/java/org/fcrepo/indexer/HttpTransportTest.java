@@ -0,0 +1,203 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.http.util.EntityUtils.consume;
+import static org.apache.http.util.EntityUtils.toString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpTransportTest {
+
+    private HttpServer server;
+
+    private String base;
+
+    private final HttpTransport testTransport = new HttpTransport();
+
+    private final ExecutorService executor = newCachedThreadPool();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(newCachedThreadPool());
+        server.createContext("/plain", new HttpHandler() {
+
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                respond(exchange, "plain".getBytes("UTF-8"));
+            }
+        });
+        server.createContext("/gzip", new HttpHandler() {
+
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final String accept =
+                    exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (accept == null || !accept.contains("gzip")) {
+                    respond(exchange, "uncompressed".getBytes("UTF-8"));
+                    return;
+                }
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                try (GZIPOutputStream out = new GZIPOutputStream(body)) {
+                    out.write("compressed".getBytes("UTF-8"));
+                }
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                respond(exchange, body.toByteArray());
+            }
+        });
+        server.createContext("/slow", new HttpHandler() {
+
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                try {
+                    release.await(10, SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, "slow".getBytes("UTF-8"));
+            }
+        });
+        server.start();
+        base = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        testTransport.shutdown();
+        executor.shutdownNow();
+        server.stop(0);
+    }
+
+    private static void respond(final HttpExchange exchange, final byte[] body)
+        throws IOException {
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private String get(final String path) throws IOException {
+        final HttpResponse response =
+            testTransport.getClient().execute(new HttpGet(base + path));
+        return toString(response.getEntity(), "UTF-8");
+    }
+
+    @Test
+    public void testRecordsLeaseWaitsAndLatencies() throws IOException {
+        assertNull(testTransport.getPoolStats());
+        assertEquals("plain", get("/plain"));
+        assertEquals("plain", get("/plain"));
+        assertEquals(2, testTransport.getLeaseWaits().getCount());
+        final Histogram latency =
+            testTransport.getLatencies().get(
+                    "localhost:" + server.getAddress().getPort());
+        assertNotNull(latency);
+        assertEquals(2, latency.getCount());
+        // the connection was reused
+        assertEquals(1, testTransport.getPoolStats().getAvailable());
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        assertEquals("compressed", get("/gzip"));
+    }
+
+    @Test
+    public void testWithoutGzip() throws IOException {
+        testTransport.setGzip(false);
+        assertEquals("uncompressed", get("/gzip"));
+    }
+
+    @Test
+    public void testHostLimit() throws Exception {
+        testTransport.setHostLimits(singletonMap(base, 1));
+        final Callable<String> slow = new Callable<String>() {
+
+            @Override
+            public String call() throws IOException {
+                return get("/slow");
+            }
+        };
+        final Future<String> first = executor.submit(slow);
+        final Future<String> second = executor.submit(slow);
+        PoolStats stats = testTransport.getPoolStats();
+        for (int i = 0; i < 100
+                && (stats == null || stats.getPending() == 0); i++) {
+            Thread.sleep(50);
+            stats = testTransport.getPoolStats();
+        }
+        // one request holds the only connection to the host, one waits
+        assertEquals(1, stats.getLeased());
+        assertEquals(1, stats.getPending());
+        release.countDown();
+        assertEquals("slow", first.get(10, SECONDS));
+        assertEquals("slow", second.get(10, SECONDS));
+        assertEquals(2, testTransport.getLeaseWaits().getCount());
+    }
+
+    @Test
+    public void testIdleConnectionsAreEvicted() throws Exception {
+        testTransport.setIdleTimeout(100);
+        consume(testTransport.getClient().execute(new HttpGet(base + "/plain"))
+                .getEntity());
+        assertEquals(1, testTransport.getPoolStats().getAvailable());
+        for (int i = 0; i < 100
+                && testTransport.getPoolStats().getAvailable() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, testTransport.getPoolStats().getAvailable());
+    }
+
+    @Test
+    public void testShutdown() throws IOException {
+        get("/plain");
+        testTransport.shutdown();
+        // a new client is built on next use
+        assertEquals("plain", get("/plain"));
+        assertTrue(testTransport.getLeaseWaits().getCount() >= 2);
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static com.google.common.collect.ImmutableMap.of;
+import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class IndexerBatcherTest {
+
+    @Mock
+    private BatchIndexer<Object> mockIndexer;
+
+    private final ScheduledExecutorService scheduler =
+        newSingleThreadScheduledExecutor();
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFlushOnSize() throws IOException {
+        final IndexerBatcher<Object> batcher =
+            new IndexerBatcher<>(mockIndexer, 2, 60000, scheduler);
+        batcher.update("a", "content-a");
+        verify(mockIndexer, never()).updateAll(anyMap());
+        batcher.update("b", "content-b");
+        verify(mockIndexer).updateAll(
+                of("a", (Object) "content-a", "b", "content-b"));
+        assertEquals(0, batcher.size());
+        assertEquals(1, batcher.getBatchCount());
+    }
+
+    @Test
+    public void testFlushOnDelay() throws IOException {
+        final IndexerBatcher<Object> batcher =
+            new IndexerBatcher<>(mockIndexer, 100, 50, scheduler);
+        batcher.remove("a");
+        verify(mockIndexer, timeout(2000)).removeAll(asList("a"));
+    }
+
+    @Test
+    public void testLatestOperationWins() throws IOException {
+        final IndexerBatcher<Object> batcher =
+            new IndexerBatcher<>(mockIndexer, 100, 60000, scheduler);
+        batcher.update("a", "first");
+        batcher.update("a", "second");
+        batcher.remove("b");
+        batcher.update("b", "recreated");
+        batcher.update("c", "doomed");
+        batcher.remove("c");
+        assertEquals(3, batcher.size());
+        batcher.flush();
+        verify(mockIndexer).updateAll(
+                of("a", (Object) "second", "b", "recreated"));
+        verify(mockIndexer).removeAll(asList("c"));
+        assertEquals(6, batcher.getOperationCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testQueueWhileSending() throws Exception {
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(mockIndexer.updateAll(anyMap())).thenAnswer(new Answer<Object>() {
+
+            @Override
+            public Object answer(final InvocationOnMock invocation)
+                throws InterruptedException {
+                sending.countDown();
+                release.await();
+                return null;
+            }
+        });
+        final IndexerBatcher<Object> batcher =
+            new IndexerBatcher<>(mockIndexer, 2, 60000, scheduler);
+        batcher.update("a", "content-a");
+        final Thread sender = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                batcher.flush();
+            }
+        });
+        sender.start();
+        assertTrue(sending.await(2, SECONDS));
+        // must not wait for the batch being sent
+        batcher.remove("b");
+        assertEquals(1, batcher.size());
+        release.countDown();
+        sender.join(2000);
+        batcher.flush();
+        verify(mockIndexer).removeAll(asList("b"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testUpdateListener() throws IOException {
+        final List<Object> outcomes = new ArrayList<>();
+        final IndexerBatcher<Object> batcher =
+            new IndexerBatcher<>(mockIndexer, 100, 60000, scheduler);
+        batcher.setUpdateListener(new IndexerBatcher.UpdateListener<Object>() {
+
+            @Override
+            public void updatesSucceeded(final Map<String, Object> updates) {
+                outcomes.add(updates);
+            }
+
+            @Override
+            public void updatesFailed(final Collection<String> ids) {
+                outcomes.add(ids);
+            }
+        });
+        doReturn(immediateFuture(null)).when(mockIndexer).updateAll(anyMap());
+        batcher.update("a", "content-a");
+        batcher.flush();
+        doReturn(immediateFailedFuture(new IOException("refused"))).when(
+                mockIndexer).updateAll(anyMap());
+        batcher.update("b", "content-b");
+        batcher.flush();
+        assertEquals(asList(of("a", "content-a"), of("b", "content-b")
+                .keySet()), outcomes);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testEmptyFlush() throws IOException {
+        new IndexerBatcher<>(mockIndexer, 2, 60000, scheduler).flush();
+        verify(mockIndexer, never()).removeAll(
+                anyCollectionOf(String.class));
+        verify(mockIndexer, never()).updateAll(anyMap());
+    }
+}
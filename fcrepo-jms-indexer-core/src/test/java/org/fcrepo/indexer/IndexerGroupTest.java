@@ -16,6 +16,7 @@
 
 package org.fcrepo.indexer;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
@@ -26,23 +27,36 @@ import org.fcrepo.kernel.utils.EventType;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
+import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static java.io.File.createTempFile;
 import static javax.jcr.observation.Event.NODE_ADDED;
 import static javax.jcr.observation.Event.PROPERTY_CHANGED;
 import static org.fcrepo.kernel.RdfLexicon.REPOSITORY_NAMESPACE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -121,6 +135,176 @@ public class IndexerGroupTest {
         verify(indexer, atLeastOnce()).update(anyString(), any());
     }
 
+    @Test
+    public void testKnownNonIndexableObjectIsNotRetrieved() throws Exception {
+        indexerGroup.setMetadataCacheSize(10);
+        String id = "/test";
+        final String eventType =
+            REPOSITORY_NAMESPACE + EventType.valueOf(NODE_ADDED).toString();
+        indexerGroup.onMessage(createUnindexableMessage(eventType, id));
+        indexerGroup.onMessage(createUnindexableMessage(eventType, id));
+        verify(httpClient, times(1)).execute(any(HttpUriRequest.class));
+        verify(indexer, never()).update(anyString(), any());
+        assertEquals(1, indexerGroup.getMetadataCache().getHits());
+    }
+
+    @Test
+    public void testPropertyMessageInvalidatesMetadata() throws Exception {
+        indexerGroup.setMetadataCacheSize(10);
+        when(indexer.getIndexerType()).thenReturn(Indexer.IndexerType.RDF);
+        indexerGroup.onMessage(createUnindexableMessage(REPOSITORY_NAMESPACE
+                + EventType.valueOf(NODE_ADDED).toString(), "/test"));
+        indexerGroup.onMessage(createIndexablePropertyMessage(REPOSITORY_NAMESPACE
+                + EventType.valueOf(PROPERTY_CHANGED).toString(), "/test/dc:title"));
+        verify(httpClient, times(2)).execute(any(HttpUriRequest.class));
+        verify(indexer).update(anyString(), any());
+    }
+
+    @Test
+    public void testKnownResourceWithoutTransformWhileStreaming() throws Exception {
+        indexerGroup.setMetadataCacheSize(10);
+        indexerGroup.setStreamingRdf(true);
+        when(indexer.getIndexerType()).thenReturn(Indexer.IndexerType.NAMEDFIELDS);
+        final String eventType =
+            REPOSITORY_NAMESPACE + EventType.valueOf(NODE_ADDED).toString();
+        indexerGroup.onMessage(createMockMessage(false, eventType, "/test", true, null, false));
+        // known indexable without a transformation, and no triples kept
+        indexerGroup.onMessage(createMockMessage(false, eventType, "/test", true, null, false));
+        assertEquals(1, indexerGroup.getMetadataCache().getHits());
+        verify(indexer, never()).update(anyString(), any());
+    }
+
+    @Test
+    public void testSpeculativeTransformRetrieval() throws Exception {
+        indexerGroup.setMetadataCacheSize(10);
+        indexerGroup.setRetrievalThreads(1);
+        when(indexer.getIndexerType()).thenReturn(Indexer.IndexerType.NAMEDFIELDS);
+        indexerGroup.onMessage(createIndexableMessage(REPOSITORY_NAMESPACE
+                + EventType.valueOf(NODE_ADDED).toString(), "/test"));
+        final Message m = createIndexablePropertyMessage(REPOSITORY_NAMESPACE
+                + EventType.valueOf(PROPERTY_CHANGED).toString(), "/test/dc:title");
+        when(httpClient.execute(any(HttpUriRequest.class))).thenAnswer(
+                new Answer<HttpResponse>() {
+
+                    @Override
+                    public HttpResponse answer(final InvocationOnMock invocation)
+                        throws Exception {
+                        final HttpUriRequest request =
+                            (HttpUriRequest) invocation.getArguments()[0];
+                        return request.getURI().toString().contains("fcr:transform")
+                                ? createResponse("[{\"id\" : [\"test\"]}]")
+                                : createResponse(getIndexableTriples("/test", true, "default"));
+                    }
+                });
+        indexerGroup.onMessage(m);
+        indexerGroup.shutdown();
+        assertEquals(1, indexerGroup.getSpeculationsUsed());
+        assertEquals(0, indexerGroup.getSpeculationsDiscarded());
+        verify(indexer, times(2)).update(anyString(), any());
+    }
+
+    @Test
+    public void testRemovalInvalidatesCachedFields() throws Exception {
+        indexerGroup.setResponseCacheSize(10);
+        final HttpResponse response = createResponse("[]");
+        final Header etag = mock(Header.class);
+        when(etag.getValue()).thenReturn("\"1\"");
+        when(response.getFirstHeader("ETag")).thenReturn(etag);
+        indexerGroup.getFieldsCache().store(
+                repoUrl + "/test/fcr:transform/default", response,
+                new NamedFields());
+        indexerGroup.getFieldsCache().store(
+                repoUrl + "/other/fcr:transform/default", response,
+                new NamedFields());
+        indexerGroup.onMessage(createUnindexableMessage(
+                IndexerGroup.REMOVAL_EVENT_TYPE, "/test"));
+        assertEquals(1, indexerGroup.getFieldsCache().size());
+    }
+
+    @Test
+    public void testUnchangedContentIsSkipped() throws Exception {
+        doReturn(immediateFuture(null)).when(indexer).update(anyString(), any());
+        sendTwiceWithFingerprints();
+        verify(indexer, times(1)).update(anyString(), any());
+        assertEquals(0.5, indexerGroup.getFingerprints().getSkipRatio(), 0);
+        indexerGroup.shutdown();
+    }
+
+    @Test
+    public void testFailedUpdateIsNotSkipped() throws Exception {
+        doReturn(immediateFailedFuture(new IOException("refused"))).when(
+                indexer).update(anyString(), any());
+        sendTwiceWithFingerprints();
+        verify(indexer, times(2)).update(anyString(), any());
+        assertEquals(0, indexerGroup.getFingerprints().getSkipRatio(), 0);
+        indexerGroup.shutdown();
+    }
+
+    @Test
+    public void testUnconfirmedUpdateIsNotSkipped() throws Exception {
+        sendTwiceWithFingerprints();
+        verify(indexer, times(2)).update(anyString(), any());
+        indexerGroup.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBatchingTurnedOff() throws Exception {
+        final BatchIndexer<Object> batchIndexer = mock(BatchIndexer.class);
+        indexerGroup.setBatchSize(10);
+        final IndexerBatcher<Object> batcher =
+            indexerGroup.getBatcher(batchIndexer);
+        assertNotNull(batcher);
+        assertSame(batcher, indexerGroup.getBatcher(batchIndexer));
+        batcher.update("/test", "content");
+        indexerGroup.setBatchSize(1);
+        // the waiting update is sent rather than left to a stopped timer
+        verify(batchIndexer).updateAll(any(Map.class));
+        assertNull(indexerGroup.getBatcher(batchIndexer));
+        indexerGroup.shutdown();
+    }
+
+    /**
+     * Send the same indexable content twice, keeping fingerprints of content
+     * sent.
+     */
+    private void sendTwiceWithFingerprints() throws Exception {
+        final File fingerprints = createTempFile("fingerprints", ".bin");
+        fingerprints.deleteOnExit();
+        indexerGroup.setFingerprintFile(fingerprints.getPath());
+        when(indexer.getIndexerType()).thenReturn(Indexer.IndexerType.NAMEDFIELDS);
+        final String eventType =
+            REPOSITORY_NAMESPACE + EventType.valueOf(NODE_ADDED).toString();
+        final Message first = createIndexableMessage(eventType, "/test");
+        final Message second = createIndexableMessage(eventType, "/test");
+        when(httpClient.execute(any(HttpUriRequest.class))).thenAnswer(
+                new Answer<HttpResponse>() {
+
+                    @Override
+                    public HttpResponse answer(final InvocationOnMock invocation)
+                        throws Exception {
+                        final HttpUriRequest request =
+                            (HttpUriRequest) invocation.getArguments()[0];
+                        return request.getURI().toString().contains("fcr:transform")
+                                ? createResponse("[{\"id\" : [\"test\"]}]")
+                                : createResponse(getIndexableTriples("/test", true, "default"));
+                    }
+                });
+        indexerGroup.onMessage(first);
+        indexerGroup.onMessage(second);
+    }
+
+    private HttpResponse createResponse(final String body) throws Exception {
+        final HttpResponse r = mock(HttpResponse.class);
+        final StatusLine s = mock(StatusLine.class);
+        when(s.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(r.getStatusLine()).thenReturn(s);
+        final HttpEntity e = mock(HttpEntity.class);
+        when(e.getContent()).thenReturn(new ByteArrayInputStream(body.getBytes("UTF-8")));
+        when(r.getEntity()).thenReturn(e);
+        return r;
+    }
+
     private Message createUnindexableMessage(String eventType, String identifier) throws Exception {
         return createMockMessage(false, eventType, identifier, false, null, false);
     }
@@ -16,6 +16,7 @@
 
 package org.fcrepo.indexer;
 
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -50,6 +51,19 @@ public class NamedFieldsDeserializerTest {
         }
     }
 
+    @Test
+    public void testReadScalarValues() throws IOException {
+        final String fakeJson =
+            "[{\"count\" : [3, true, null], \"title\" : [\"A\"]}]";
+        try (
+            Reader r = new StringReader(fakeJson);
+            JsonReader jr = new JsonReader(r)) {
+            final NamedFields results = new NamedFieldsDeserializer().read(jr);
+            assertEquals(asList("3", "true"), results.get("count"));
+            assertEquals(asList("A"), results.get("title"));
+        }
+    }
+
     @Test(expected=IllegalStateException.class)
     public void testReadBadJson() throws IOException{
         final String testUri = "testUri";
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static com.google.common.collect.ImmutableMap.of;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collection;
+
+import org.junit.Test;
+
+public class NamedFieldsTest {
+
+    private final NamedFields testFields = new NamedFields(of("title",
+            (Collection<String>) asList("A title"), "creator", asList("Someone",
+                    "Someone else")));
+
+    @Test
+    public void testEqualsMap() {
+        assertEquals(of("title", asList("A title"), "creator", asList(
+                "Someone", "Someone else")), testFields);
+        assertEquals(2, testFields.size());
+        assertNull(testFields.get("missing"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        testFields.put("title", asList("Another title"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutableValues() {
+        testFields.get("title").add("Another title");
+    }
+
+    @Test
+    public void testWith() {
+        final NamedFields withId = testFields.with("id", asList("test"));
+        assertEquals(asList("test"), withId.get("id"));
+        assertFalse("Original fields were changed!", testFields
+                .containsKey("id"));
+        assertSame("Values were not shared!", testFields.get("creator"),
+                withId.get("creator"));
+
+        final NamedFields retitled =
+            testFields.with("title", asList("Another title"));
+        assertEquals(asList("Another title"), retitled.get("title"));
+        assertEquals(asList("A title"), testFields.get("title"));
+    }
+
+    @Test
+    public void testInternedNames() {
+        final NamedFields other =
+            NamedFields.builder().field(new String("creator"), "B").build();
+        assertSame(testFields.keySet().iterator().next(), other.keySet()
+                .iterator().next());
+    }
+
+    @Test
+    public void testBuilderKeepsLastValues() {
+        final NamedFields fields =
+            NamedFields.builder().field("a", "1").field("b", "2").field("a",
+                    "3").build();
+        assertEquals(asList("3"), fields.get("a"));
+        assertEquals(2, fields.size());
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static java.util.Collections.synchronizedList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PartitionedDispatcherTest {
+
+    private static final int LANES = 4;
+
+    private PartitionedDispatcher testDispatcher;
+
+    @After
+    public void tearDown() {
+        testDispatcher.shutdown();
+    }
+
+    @Test
+    public void testOrderPreservedPerIdentifier() throws InterruptedException {
+        final int operations = 100;
+        final List<Boolean> received = synchronizedList(new ArrayList<Boolean>());
+        final CountDownLatch done = new CountDownLatch(operations);
+        testDispatcher = new PartitionedDispatcher(LANES, new ResourceEventHandler() {
+
+            @Override
+            public void handle(final String pid, final Boolean removal) {
+                received.add(removal);
+                done.countDown();
+            }
+        });
+        final List<Boolean> sent = new ArrayList<>();
+        for (int i = 0; i < operations; i++) {
+            final Boolean removal = i % 3 == 0;
+            sent.add(removal);
+            testDispatcher.handle("/test", removal);
+        }
+        assertTrue("Operations did not complete!", done.await(10, SECONDS));
+        assertEquals(sent, received);
+    }
+
+    @Test
+    public void testQueueDepths() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        testDispatcher = new PartitionedDispatcher(LANES, new ResourceEventHandler() {
+
+            @Override
+            public void handle(final String pid, final Boolean removal) {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            testDispatcher.handle("/test", false);
+        }
+        final int lane = testDispatcher.laneFor("/test");
+        final List<Integer> depths = testDispatcher.getQueueDepths();
+        assertEquals(LANES, depths.size());
+        // one operation is executing, the rest are waiting
+        assertTrue(depths.get(lane) >= 2);
+        release.countDown();
+    }
+
+    @Test
+    public void testFullLaneBlocksCaller() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<Thread> laneThread = new AtomicReference<>();
+        testDispatcher = new PartitionedDispatcher(1, 1, new ResourceEventHandler() {
+
+            @Override
+            public void handle(final String pid, final Boolean removal) {
+                laneThread.set(Thread.currentThread());
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        // one operation executes and one waits, filling the lane
+        testDispatcher.handle("/test", false);
+        testDispatcher.handle("/test", false);
+        final Thread caller = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                testDispatcher.handle("/test", true);
+            }
+        });
+        caller.start();
+        caller.join(500);
+        assertTrue("Caller was not held back by a full lane!", caller.isAlive());
+        release.countDown();
+        caller.join(10000);
+        assertFalse(caller.isAlive());
+        assertTrue(laneThread.get().isDaemon());
+        assertTrue(laneThread.get().getName().startsWith("indexer-lane-"));
+    }
+}
@@ -19,11 +19,25 @@ import static com.hp.hpl.jena.graph.NodeFactory.createURI;
 import static com.hp.hpl.jena.graph.Triple.create;
 import static com.hp.hpl.jena.rdf.model.ModelFactory.createDefaultModel;
 import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_NOT_MODIFIED;
 import static org.apache.http.HttpStatus.SC_OK;
+import static com.hp.hpl.jena.rdf.model.ResourceFactory.createResource;
+import static com.hp.hpl.jena.vocabulary.RDF.type;
+import static org.fcrepo.indexer.IndexerGroup.INDEXABLE_MIXIN;
+import static org.fcrepo.indexer.IndexerGroup.INDEXING_TRANSFORM_PREDICATE;
+import static org.fcrepo.indexer.RdfRetriever.PREFER_CONTAINMENT;
+import static org.fcrepo.indexer.RdfRetriever.PREFER_MEMBERSHIP;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 import java.io.ByteArrayInputStream;
@@ -35,8 +49,10 @@ import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHeader;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Model;
@@ -93,6 +109,121 @@ public class RdfRetrieverTest {
 
     }
 
+    @Test
+    public void testConditionalRetrieval() throws IOException {
+        final String testId = "testConditionalRetrieval";
+        final Model input = createDefaultModel();
+        input.add(input.asStatement(testTriple));
+        when(mockStatusLine.getStatusCode()).thenReturn(SC_OK, SC_NOT_MODIFIED);
+        when(mockResponse.getFirstHeader("ETag")).thenReturn(
+                new BasicHeader("ETag", "\"v1\""));
+        try (StringWriter w = new StringWriter()) {
+            input.write(w, "N3");
+            when(mockEntity.getContent()).thenReturn(
+                    new ByteArrayInputStream(w.toString().getBytes()));
+        }
+        final ResponseCache<Model> cache = new ResponseCache<>(10, 60000);
+        final Model first = new RdfRetriever(testId, mockClient, cache).get();
+        final Model second = new RdfRetriever(testId, mockClient, cache).get();
+        assertSame("Didn't reuse cached model!", first, second);
+        assertEquals(1, cache.getRevalidations());
+        assertEquals(1, cache.getMisses());
+
+        final ArgumentCaptor<HttpUriRequest> requests =
+            ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(mockClient, times(2)).execute(requests.capture());
+        assertNull(requests.getAllValues().get(0).getFirstHeader(
+                "If-None-Match"));
+        assertEquals("\"v1\"", requests.getAllValues().get(1).getFirstHeader(
+                "If-None-Match").getValue());
+    }
+
+    @Test
+    public void testVariantsCachedApart() throws IOException {
+        final String testId = "testVariantsCachedApart";
+        final Model input = createDefaultModel();
+        input.add(input.asStatement(testTriple));
+        when(mockStatusLine.getStatusCode()).thenReturn(SC_OK);
+        when(mockResponse.getFirstHeader("ETag")).thenReturn(
+                new BasicHeader("ETag", "\"v1\""));
+        try (StringWriter w = new StringWriter()) {
+            input.write(w, "N3");
+            when(mockEntity.getContent()).thenReturn(
+                    new ByteArrayInputStream(w.toString().getBytes()),
+                    new ByteArrayInputStream(w.toString().getBytes()));
+        }
+        final ResponseCache<Model> cache = new ResponseCache<>(10, 60000);
+        new RdfRetriever(testId, mockClient, cache).get();
+        new RdfRetriever(testId, mockClient, cache, RdfRetriever.DEFAULT_FORMAT,
+                asList(PREFER_CONTAINMENT), null).get();
+
+        final ArgumentCaptor<HttpUriRequest> requests =
+            ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(mockClient, times(2)).execute(requests.capture());
+        // a response without containment triples is not the full response
+        assertNull(requests.getAllValues().get(1).getFirstHeader(
+                "If-None-Match"));
+        assertEquals(2, cache.size());
+        cache.invalidate(testId);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testStreamingRetrieval() throws IOException {
+        final String testId = "info:testStreamingRetrieval";
+        final Model input = createDefaultModel();
+        input.add(input.asStatement(testTriple));
+        input.add(createResource(testId), type, INDEXABLE_MIXIN);
+        input.add(createResource(testId), INDEXING_TRANSFORM_PREDICATE,
+                "default");
+        when(mockStatusLine.getStatusCode()).thenReturn(SC_OK);
+        try (StringWriter w = new StringWriter()) {
+            input.write(w, "N3");
+            when(mockEntity.getContent()).thenReturn(
+                    new ByteArrayInputStream(w.toString().getBytes()),
+                    new ByteArrayInputStream(w.toString().getBytes()));
+        }
+        final RdfRetriever retriever = new RdfRetriever(testId, mockClient);
+
+        final TripleBuffer discarded = retriever.getTriples(false);
+        assertTrue(discarded.isIndexable());
+        assertEquals("default", discarded.getTransformKey());
+        assertEquals(0, discarded.size());
+
+        final TripleBuffer kept = retriever.getTriples(true);
+        assertEquals(3, kept.size());
+        final Model result = kept.toModel();
+        assertTrue("Didn't find our test triple!", result.contains(result
+                .asStatement(testTriple)));
+        assertFalse(new TripleBuffer("info:other", false).isIndexable());
+    }
+
+    @Test
+    public void testOmittingRetrieval() throws IOException {
+        final String testId = "testOmittingRetrieval";
+        final Model input = createDefaultModel();
+        input.add(input.asStatement(testTriple));
+        when(mockStatusLine.getStatusCode()).thenReturn(SC_OK);
+        final byte[] rdf;
+        try (StringWriter w = new StringWriter()) {
+            input.write(w, "N3");
+            rdf = w.toString().getBytes();
+        }
+        when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(rdf));
+        final Histogram sizes = new Histogram();
+        new RdfRetriever(testId, mockClient, null, RdfFormat.N3, asList(
+                PREFER_CONTAINMENT, PREFER_MEMBERSHIP), sizes).get();
+
+        final ArgumentCaptor<HttpUriRequest> request =
+            ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(mockClient).execute(request.capture());
+        assertEquals("return=representation; omit=\"" + PREFER_CONTAINMENT
+                + " " + PREFER_MEMBERSHIP + "\"", request.getValue()
+                .getFirstHeader("Prefer").getValue());
+        assertEquals(1, sizes.getCount());
+        assertEquals(rdf.length, sizes.getTotal());
+    }
+
     @Test(expected = RuntimeException.class)
     public void testFailedRetrieval(){
         final String testId = "testFailedRetrieval";
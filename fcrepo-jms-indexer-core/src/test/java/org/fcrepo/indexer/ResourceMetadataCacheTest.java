@@ -0,0 +1,56 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ResourceMetadataCacheTest {
+
+    private final ResourceMetadataCache cache = new ResourceMetadataCache(10);
+
+    @Test
+    public void testPut() {
+        final long version = cache.version("info:a");
+        assertTrue(cache.put("info:a", version, true, "default"));
+        assertTrue(cache.get("info:a").isIndexable());
+        assertEquals("default", cache.get("info:a").getTransformKey());
+    }
+
+    @Test
+    public void testStalePutIsDropped() {
+        final long version = cache.version("info:a");
+        // an event arrives while the resource's RDF is being retrieved
+        cache.invalidate("info:a");
+        assertFalse(cache.put("info:a", version, true, "default"));
+        assertNull(cache.get("info:a"));
+        assertTrue(cache.put("info:a", cache.version("info:a"), false, null));
+        assertFalse(cache.get("info:a").isIndexable());
+    }
+
+    @Test
+    public void testHintSurvivesInvalidation() {
+        cache.put("info:a", cache.version("info:a"), true, "default");
+        cache.invalidate("info:a");
+        assertNull(cache.get("info:a"));
+        assertEquals("default", cache.getTransformHint("info:a"));
+    }
+}
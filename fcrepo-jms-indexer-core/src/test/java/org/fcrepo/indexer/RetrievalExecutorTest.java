@@ -0,0 +1,110 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class RetrievalExecutorTest {
+
+    private final RetrievalExecutor testRetriever = new RetrievalExecutor(1);
+
+    @After
+    public void tearDown() {
+        testRetriever.shutdown();
+    }
+
+    @Test
+    public void testRetrieve() throws Exception {
+        final ListenableFuture<String> result =
+            testRetriever.retrieve(constant("value"));
+        assertEquals("value", result.get(10, SECONDS));
+    }
+
+    @Test
+    public void testRetrievalsAreBounded() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ListenableFuture<String> first =
+            testRetriever.retrieve(new Supplier<String>() {
+
+                @Override
+                public String get() {
+                    try {
+                        release.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "first";
+                }
+            });
+        final ListenableFuture<String> second =
+            testRetriever.retrieve(constant("second"));
+        Thread.sleep(100);
+        // one thread, so the second waits for the first
+        assertFalse(second.isDone());
+        release.countDown();
+        assertEquals("first", first.get(10, SECONDS));
+        assertEquals("second", second.get(10, SECONDS));
+    }
+
+    @Test
+    public void testFailurePropagates() throws Exception {
+        final ListenableFuture<String> result =
+            testRetriever.retrieve(new Supplier<String>() {
+
+                @Override
+                public String get() {
+                    throw new AbsentTransformPropertyException("info:a");
+                }
+            });
+        try {
+            result.get(10, SECONDS);
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof AbsentTransformPropertyException);
+            return;
+        }
+        throw new AssertionError("Retrieval should have failed!");
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testShutdown() {
+        testRetriever.shutdown();
+        testRetriever.retrieve(constant("value"));
+    }
+
+    private static Supplier<String> constant(final String value) {
+        return new Supplier<String>() {
+
+            @Override
+            public String get() {
+                return value;
+            }
+        };
+    }
+}
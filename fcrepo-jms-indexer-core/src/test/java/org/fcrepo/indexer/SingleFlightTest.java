@@ -0,0 +1,111 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String, Object> testFlights =
+        new SingleFlight<>();
+
+    @Test
+    public void testConcurrentCallersShareOneComputation() throws Exception {
+        final AtomicInteger computations = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Object value = new Object();
+        final Supplier<Object> slow = new Supplier<Object>() {
+
+            @Override
+            public Object get() {
+                computations.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return value;
+            }
+        };
+        final Callable<Object> caller = new Callable<Object>() {
+
+            @Override
+            public Object call() {
+                return testFlights.get("key", slow);
+            }
+        };
+        final ExecutorService executor = newFixedThreadPool(2);
+        try {
+            final Future<Object> first = executor.submit(caller);
+            assertTrue(started.await(10, SECONDS));
+            final Future<Object> joiner = executor.submit(caller);
+            while (testFlights.getMerges() == 0) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            assertSame(value, joiner.get(10, SECONDS));
+            assertSame(value, first.get(10, SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, computations.get());
+        assertEquals(2, testFlights.getCalls());
+        assertEquals(0.5, testFlights.getMergeRate(), 0.0);
+    }
+
+    @Test
+    public void testSequentialCallersComputeAfresh() {
+        final AtomicInteger computations = new AtomicInteger();
+        final Supplier<Object> counting = new Supplier<Object>() {
+
+            @Override
+            public Object get() {
+                return computations.incrementAndGet();
+            }
+        };
+        assertEquals(1, testFlights.get("key", counting));
+        assertEquals(2, testFlights.get("key", counting));
+        assertEquals(0, testFlights.getMerges());
+    }
+
+    @Test(expected = AbsentTransformPropertyException.class)
+    public void testExceptionPropagates() {
+        testFlights.share("key", new Supplier<Object>() {
+
+            @Override
+            public Object get() {
+                throw new AbsentTransformPropertyException("key");
+            }
+        }).get();
+    }
+}
@@ -19,11 +19,21 @@ import static com.google.common.collect.ImmutableMap.of;
 import static java.lang.System.currentTimeMillis;
 import static java.lang.Thread.sleep;
 import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
 import static java.util.UUID.randomUUID;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.apache.solr.core.CoreContainer.createAndLoad;
 import static org.fcrepo.indexer.Indexer.IndexerType.NAMEDFIELDS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import static org.mockito.Mockito.any;
@@ -33,8 +43,13 @@ import static org.slf4j.LoggerFactory.getLogger;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServer;
@@ -49,7 +64,10 @@ import org.fcrepo.indexer.NamedFields;
 import org.fcrepo.indexer.solr.SolrIndexer;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 
 
@@ -197,6 +215,206 @@ public class SolrIndexerTest {
         assertTrue("Found our record when we shouldn't have!", success);
     }
 
+    @Test
+    public void testToDocument() {
+        final NamedFields testContent =
+            new NamedFields(of("title", (Collection<String>) asList("A", "B"),
+                    "id", asList("ignored")));
+        final SolrInputDocument doc =
+            SolrIndexer.toDocument("testDocument", testContent);
+        assertEquals("testDocument", doc.getFieldValue("id"));
+        assertEquals(asList("A", "B"), doc.getFieldValues("title"));
+        assertEquals(2, doc.size());
+        assertEquals("Fields were changed!", asList("ignored"), testContent
+                .get("id"));
+    }
+
+    @Test
+    public void testToDelta() {
+        final NamedFields previous =
+            new NamedFields(of("title", (Collection<String>) asList("A"),
+                    "creator", asList("B"), "subject", asList("x")));
+        final NamedFields fields =
+            new NamedFields(of("title", (Collection<String>) asList("A"),
+                    "creator", asList("B", "C"), "description", asList("D")));
+        final SolrInputDocument doc =
+            SolrIndexer.toDelta("testDocument", previous, fields);
+        assertEquals("testDocument", doc.getFieldValue("id"));
+        assertNull("Unchanged field was sent!", doc.getField("title"));
+        assertEquals(of("add", asList("C")), doc.getFieldValue("creator"));
+        assertEquals(of("set", asList("D")), doc.getFieldValue("description"));
+        assertEquals(singletonMap("set", null), doc.getFieldValue("subject"));
+        assertNull(SolrIndexer.toDelta("testDocument", fields, fields));
+    }
+
+    @Test
+    public void testAtomicUpdates() throws SolrServerException, IOException,
+        InterruptedException, ExecutionException {
+        when(mockServer.add(any(SolrInputDocument.class))).thenReturn(
+                mockUpdateResponse);
+        when(mockUpdateResponse.getStatus()).thenReturn(0);
+        final SolrIndexer atomicIndexer = new SolrIndexer(mockServer);
+        atomicIndexer.setIndexedFieldsCacheSize(10);
+        final NamedFields fields =
+            new NamedFields(of("title", (Collection<String>) asList("A"),
+                    "creator", asList("B")));
+
+        atomicIndexer.update("testAtomic", fields).get();
+        atomicIndexer.update("testAtomic", fields.with("title", asList("Z")))
+                .get();
+        assertEquals(0, atomicIndexer.update("testAtomic",
+                fields.with("title", asList("Z"))).get().getStatus());
+
+        final ArgumentCaptor<SolrInputDocument> docs =
+            ArgumentCaptor.forClass(SolrInputDocument.class);
+        verify(mockServer, times(2)).add(docs.capture());
+        assertEquals(asList("A"), docs.getAllValues().get(0).getFieldValues(
+                "title"));
+        assertEquals(of("set", asList("Z")), docs.getAllValues().get(1)
+                .getFieldValue("title"));
+        assertNull(docs.getAllValues().get(1).getField("creator"));
+        assertEquals(1, atomicIndexer.getAtomicUpdates());
+    }
+
+    @Test
+    public void testFailedAtomicUpdateSentWhole() throws SolrServerException,
+        IOException, InterruptedException, ExecutionException {
+        when(mockServer.add(any(SolrInputDocument.class))).thenReturn(
+                mockUpdateResponse).thenThrow(
+                new SolrServerException("unknown field")).thenReturn(
+                mockUpdateResponse);
+        when(mockUpdateResponse.getStatus()).thenReturn(0);
+        final SolrIndexer atomicIndexer = new SolrIndexer(mockServer);
+        atomicIndexer.setIndexedFieldsCacheSize(10);
+        final NamedFields fields =
+            new NamedFields(of("title", (Collection<String>) asList("A"),
+                    "creator", asList("B")));
+
+        atomicIndexer.update("testAtomic", fields).get();
+        assertEquals(0, atomicIndexer.update("testAtomic",
+                fields.with("title", asList("Z"))).get().getStatus());
+
+        final ArgumentCaptor<SolrInputDocument> docs =
+            ArgumentCaptor.forClass(SolrInputDocument.class);
+        verify(mockServer, times(3)).add(docs.capture());
+        assertEquals(of("set", asList("Z")), docs.getAllValues().get(1)
+                .getFieldValue("title"));
+        final SolrInputDocument whole = docs.getAllValues().get(2);
+        assertEquals(asList("Z"), whole.getFieldValues("title"));
+        assertEquals(asList("B"), whole.getFieldValues("creator"));
+    }
+
+    @Test
+    public void testConcurrentUpdatesOfOneDocument() throws Exception {
+        final SolrIndexer atomicIndexer = blockingIndexer();
+        final NamedFields fields =
+            new NamedFields(of("title", (Collection<String>) asList("A")));
+        atomicIndexer.update("testConcurrent", fields).get();
+        final NamedFields appended = fields.with("title", asList("A", "B"));
+        final Future<UpdateResponse> first =
+            atomicIndexer.update("testConcurrent", appended);
+        assertTrue(sending.await(TIMEOUT, MILLISECONDS));
+        // must not append the same value again while the first is in flight
+        final Future<UpdateResponse> second =
+            atomicIndexer.update("testConcurrent", appended);
+        release.countDown();
+        first.get();
+        second.get();
+        assertEquals(2, adds.get());
+    }
+
+    @Test
+    public void testRemovalDuringUpdate() throws Exception {
+        when(mockServer.deleteById(anyString())).thenReturn(
+                mockUpdateResponse);
+        final SolrIndexer atomicIndexer = blockingIndexer();
+        final NamedFields fields =
+            new NamedFields(of("title", (Collection<String>) asList("A")));
+        atomicIndexer.update("testRemoval", fields).get();
+        final NamedFields changed = fields.with("title", asList("Z"));
+        final Future<UpdateResponse> update =
+            atomicIndexer.update("testRemoval", changed);
+        assertTrue(sending.await(TIMEOUT, MILLISECONDS));
+        final Future<UpdateResponse> removal =
+            atomicIndexer.remove("testRemoval");
+        release.countDown();
+        update.get();
+        removal.get();
+        // the removed document must be sent again in full
+        atomicIndexer.update("testRemoval", changed).get();
+        assertEquals(3, adds.get());
+    }
+
+    private final AtomicInteger adds = new AtomicInteger();
+
+    private final CountDownLatch sending = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * @return an indexer remembering fields, whose second add waits for
+     *         {@link #release}
+     */
+    private SolrIndexer blockingIndexer() throws Exception {
+        when(mockServer.add(any(SolrInputDocument.class))).thenAnswer(
+                new Answer<UpdateResponse>() {
+
+                    @Override
+                    public UpdateResponse answer(
+                        final InvocationOnMock invocation)
+                        throws InterruptedException {
+                        if (adds.incrementAndGet() == 2) {
+                            sending.countDown();
+                            release.await();
+                        }
+                        return mockUpdateResponse;
+                    }
+                });
+        when(mockUpdateResponse.getStatus()).thenReturn(0);
+        final SolrIndexer atomicIndexer = new SolrIndexer(mockServer);
+        atomicIndexer.setIndexedFieldsCacheSize(10);
+        return atomicIndexer;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBatchWithCommitWithin() throws SolrServerException,
+        IOException, InterruptedException, ExecutionException {
+        when(mockServer.add(anyCollectionOf(SolrInputDocument.class), eq(500)))
+                .thenReturn(mockUpdateResponse);
+        when(mockServer.deleteById(anyListOf(String.class), eq(500)))
+                .thenReturn(mockUpdateResponse);
+        final SolrIndexer batchIndexer = new SolrIndexer(mockServer);
+        batchIndexer.setCommitWithin(500);
+        final Map<String, NamedFields> batch = new LinkedHashMap<>();
+        batch.put("a", new NamedFields(of("title", (Collection<String>) asList("A"))));
+        batch.put("b", new NamedFields(of("title", (Collection<String>) asList("B"))));
+
+        batchIndexer.updateAll(batch).get();
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Collection<SolrInputDocument>> docs =
+            ArgumentCaptor
+                    .forClass((Class<Collection<SolrInputDocument>>) (Class<?>) Collection.class);
+        verify(mockServer).add(docs.capture(), eq(500));
+        assertEquals("Should have sent both documents in one request!", 2,
+                docs.getValue().size());
+
+        batchIndexer.removeAll(asList("c", "d")).get();
+        verify(mockServer).deleteById(asList("c", "d"), 500);
+        verify(mockServer, never()).commit();
+    }
+
+    @Test
+    public void testBatchRemoveCommitsOnce() throws SolrServerException,
+        IOException, InterruptedException, ExecutionException {
+        when(mockServer.deleteById(anyListOf(String.class))).thenReturn(
+                mockUpdateResponse);
+        final SolrIndexer batchIndexer = new SolrIndexer(mockServer);
+        batchIndexer.removeAll(asList("c", "d", "e")).get();
+        verify(mockServer).deleteById(asList("c", "d", "e"));
+        verify(mockServer, times(1)).commit();
+    }
+
     @Test
     public void testGetIndexerType() {
         assertEquals("Got wrong testIndexer type!", NAMEDFIELDS, testIndexer
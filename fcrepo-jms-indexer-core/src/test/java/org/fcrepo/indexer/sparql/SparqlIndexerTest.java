@@ -24,18 +24,39 @@ import static org.slf4j.LoggerFactory.getLogger;
 import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.sparql.engine.http.QueryEngineHTTP;
+import com.hp.hpl.jena.sparql.modify.request.UpdateDataDelete;
+import com.hp.hpl.jena.sparql.modify.request.UpdateDataInsert;
+import com.hp.hpl.jena.sparql.modify.request.UpdateDrop;
+import com.hp.hpl.jena.update.Update;
 import com.hp.hpl.jena.update.UpdateRequest;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
@@ -78,17 +99,306 @@ public class SparqlIndexerTest {
         testIndexer.updateSynch("", model);
     }
 
+    @Test
+    public void testAtomicUpdateSynch() throws Exception {
+        final Model model = ModelFactory.createDefaultModel();
+        model.add(model.createResource("info://obj-0"), model
+                .createProperty("info://p"), "o");
+        testIndexer.setAtomicUpdates(true);
+        testIndexer.updateSynch("info://obj-0", model).call();
+
+        final String children =
+            "FILTER(STRSTARTS(STR(?s), \"info://obj-0/\") || "
+                    + "STRSTARTS(STR(?s), \"info://obj-0#\"))";
+        Mockito.verify(updateRequest).add(
+                "DELETE { ?s ?p ?o } WHERE { <info://obj-0> ?l ?s . ?s ?p ?o "
+                        + children + " }");
+        Mockito.verify(updateRequest).add(
+                "DELETE { ?s ?p ?o } WHERE { ?s ?l <info://obj-0> . ?s ?p ?o "
+                        + children + " }");
+        Mockito.verify(updateRequest).add(
+                "DELETE WHERE { <info://obj-0> ?p ?o }");
+        Mockito.verify(updateRequest).add(Mockito.any(UpdateDataInsert.class));
+        // no DESCRIBE round trip
+        Mockito.verify(queryEngineHTTP, Mockito.never()).execDescribeTriples();
+    }
+
+    @Test(expected = IOException.class)
+    public void testRefusedUpdateFails() throws Exception {
+        final SparqlIndexer refusingIndexer = new SparqlIndexer() {
+
+            @Override
+            protected boolean execute(final UpdateRequest update) {
+                return false;
+            }
+        };
+        refusingIndexer.setAtomicUpdates(true);
+        refusingIndexer.updateSynch("info://obj-0", objectModel()).call();
+    }
+
+    @Test
+    public void testNamedGraphUpdateSynch() throws Exception {
+        final Model model = ModelFactory.createDefaultModel();
+        model.add(model.createResource("info://obj-0"), model
+                .createProperty("info://p"), "o");
+        testIndexer.setNamedGraphs(true);
+        testIndexer.updateSynch("info://obj-0", model).call();
+
+        Mockito.verify(updateRequest).add(Mockito.any(UpdateDrop.class));
+        Mockito.verify(updateRequest).add(Mockito.any(UpdateDataInsert.class));
+        Mockito.verify(queryEngineHTTP, Mockito.never()).execDescribeTriples();
+    }
+
+    @Test
+    public void testNamedGraphRemoveSynch() {
+        testIndexer.setNamedGraphs(true);
+        testIndexer.removeSynch("info://obj-0");
+
+        Mockito.verify(updateRequest).add(Mockito.any(UpdateDrop.class));
+        // no pattern matched against every graph
+        Mockito.verify(updateRequest, Mockito.never()).add(Mockito.anyString());
+        Mockito.verify(queryEngineHTTP, Mockito.never()).execDescribeTriples();
+    }
+
+    @Test
+    public void testDiffUpdateSynch() throws Exception {
+        final RecordingSparqlIndexer diffIndexer = new RecordingSparqlIndexer();
+        diffIndexer.setDiffUpdates(true);
+        final Model model = ModelFactory.createDefaultModel();
+        final Resource obj = model.createResource("info://obj-0");
+        model.add(obj, model.createProperty("info://p"), "unchanged");
+        model.add(obj, model.createProperty("info://q"), "old");
+
+        // first sighting is a full replace: three scoped deletes and an insert
+        diffIndexer.updateSynch("info://obj-0", model).call();
+        assertEquals(1, diffIndexer.executed.size());
+        assertEquals(4, diffIndexer.executed.get(0).getOperations().size());
+
+        final Model changed = ModelFactory.createDefaultModel().add(model);
+        changed.removeAll(obj, changed.createProperty("info://q"), null);
+        changed.add(obj, changed.createProperty("info://q"), "new");
+        diffIndexer.updateSynch("info://obj-0", changed).call();
+        assertEquals(2, diffIndexer.executed.size());
+        final List<Update> ops = diffIndexer.executed.get(1).getOperations();
+        assertEquals(2, ops.size());
+        assertEquals(1, ((UpdateDataDelete) ops.get(0)).getQuads().size());
+        assertEquals(1, ((UpdateDataInsert) ops.get(1)).getQuads().size());
+
+        // nothing changed, nothing sent
+        diffIndexer.updateSynch("info://obj-0", changed).call();
+        assertEquals(2, diffIndexer.executed.size());
+
+        // after removal, the next update is a full replace again
+        diffIndexer.removeSynch("info://obj-0").call();
+        diffIndexer.updateSynch("info://obj-0", changed).call();
+        assertEquals(4, diffIndexer.executed.get(3).getOperations().size());
+        Assert.assertTrue(diffIndexer.executed.get(3).getOperations().get(3) instanceof UpdateDataInsert);
+    }
+
+    @Test
+    public void testDiffUpdateAfterParentReplaced() throws Exception {
+        final RecordingSparqlIndexer diffIndexer = new RecordingSparqlIndexer();
+        diffIndexer.setDiffUpdates(true);
+        final Model child = ModelFactory.createDefaultModel();
+        final Resource childObj = child.createResource("info://obj-0/child");
+        child.add(childObj, child.createProperty("info://p"), "old");
+        diffIndexer.updateSynch("info://obj-0/child", child).call();
+
+        // the parent's full replace deletes the child's triples too
+        diffIndexer.updateSynch("info://obj-0", objectModel()).call();
+        assertEquals(2, diffIndexer.executed.size());
+
+        // so the child's next update must replace it in full, not as a delta
+        final Model changed = ModelFactory.createDefaultModel().add(child);
+        changed.add(childObj, changed.createProperty("info://q"), "new");
+        diffIndexer.updateSynch("info://obj-0/child", changed).call();
+        final List<Update> ops = diffIndexer.executed.get(2).getOperations();
+        assertEquals(4, ops.size());
+        assertEquals(2, ((UpdateDataInsert) ops.get(3)).getQuads().size());
+    }
+
+    @Test
+    public void testChunkedUpdateSynch() throws Exception {
+        final RecordingSparqlIndexer chunkingIndexer = new RecordingSparqlIndexer();
+        chunkingIndexer.setAtomicUpdates(true);
+        chunkingIndexer.setMaxTriplesPerRequest(2);
+        final Model model = ModelFactory.createDefaultModel();
+        final Resource obj = model.createResource("info://obj-0");
+        for (int i = 0; i < 5; i++) {
+            model.add(obj, model.createProperty("info://p"), "value" + i);
+        }
+        chunkingIndexer.updateSynch("info://obj-0", model).call();
+
+        // scoped deletes plus two triples, then two, then one
+        assertEquals(3, chunkingIndexer.executed.size());
+        final List<Update> first = chunkingIndexer.executed.get(0).getOperations();
+        assertEquals(4, first.size());
+        assertEquals(2, ((UpdateDataInsert) first.get(3)).getQuads().size());
+        assertEquals(1, ((UpdateDataInsert) chunkingIndexer.executed.get(2)
+                .getOperations().get(0)).getQuads().size());
+        assertEquals(3, chunkingIndexer.getRequestSizes().getCount());
+        assertEquals(5, chunkingIndexer.getRequestSizes().getTotal());
+        assertEquals(2, chunkingIndexer.getRequestSizes().getMax());
+    }
+
+    @Test
+    public void testDirectUpdate() throws Exception {
+        final SparqlIndexer directIndexer = directIndexer(null);
+        directIndexer.setAtomicUpdates(true);
+        directIndexer.updateSynch("info://obj-0", objectModel()).call();
+
+        assertEquals(1, requests.size());
+        final HttpPost post = (HttpPost) requests.get(0);
+        assertEquals("http://localhost/update", post.getURI().toString());
+        Assert.assertTrue(post.getEntity().getContentType().getValue()
+                .startsWith("application/sparql-update"));
+        Assert.assertTrue(EntityUtils.toString(post.getEntity()).contains(
+                "INSERT DATA"));
+    }
+
+    @Test
+    public void testChunkedStreamingUpdate() throws Exception {
+        final SparqlIndexer streamingIndexer = directIndexer(null);
+        streamingIndexer.setAtomicUpdates(true);
+        streamingIndexer.setStreamingUpdates(true);
+        streamingIndexer.setMaxTriplesPerRequest(1);
+        final Model model = objectModel();
+        model.add(model.createResource("info://obj-0"), model
+                .createProperty("info://q"), "o");
+        streamingIndexer.updateSynch("info://obj-0", model).call();
+
+        assertEquals(2, requests.size());
+        final String first =
+            EntityUtils.toString(((HttpPost) requests.get(0)).getEntity());
+        final String second =
+            EntityUtils.toString(((HttpPost) requests.get(1)).getEntity());
+        Assert.assertTrue(first.contains("DELETE"));
+        Assert.assertFalse(second.contains("DELETE"));
+        Assert.assertTrue(second.contains("INSERT DATA"));
+        assertEquals(2, streamingIndexer.getRequestSizes().getTotal());
+    }
+
+    @Test
+    public void testDirectFormUpdate() throws Exception {
+        final SparqlIndexer directIndexer = directIndexer(null);
+        directIndexer.setAtomicUpdates(true);
+        directIndexer.setFormUpdates(true);
+        directIndexer.updateSynch("info://obj-0", objectModel()).call();
+
+        assertEquals(1, requests.size());
+        final HttpEntity entity = ((HttpPost) requests.get(0)).getEntity();
+        Assert.assertTrue(entity.getContentType().getValue().startsWith(
+                "application/x-www-form-urlencoded"));
+        Assert.assertTrue(EntityUtils.toString(entity).startsWith("update="));
+    }
+
+    @Test
+    public void testDirectDescribe() throws Exception {
+        final SparqlIndexer directIndexer =
+            directIndexer("<info://obj-0/child> <info://p> <info://obj-1> .\n"
+                    + "<info://obj-0> <info://p> <info://obj-0/child> .\n");
+        directIndexer.removeSynch("info://obj-0").call();
+
+        final HttpGet get = (HttpGet) requests.get(0);
+        Assert.assertTrue(get.getURI().toString().startsWith(
+                "http://localhost/query?query=DESCRIBE"));
+        boolean childDeleted = false;
+        for (final HttpUriRequest request : requests) {
+            if (request instanceof HttpPost) {
+                childDeleted |= EntityUtils.toString(((HttpPost) request)
+                        .getEntity()).contains("<info://obj-0/child>");
+            }
+        }
+        Assert.assertTrue(childDeleted);
+    }
+
+    @Test
+    public void testDirectGraphStore() throws Exception {
+        final SparqlIndexer directIndexer = directIndexer(null);
+        directIndexer.setNamedGraphs(true);
+        directIndexer.setGraphStoreBase("http://localhost/data");
+        directIndexer.updateSynch("info://obj-0", objectModel()).call();
+
+        assertEquals(1, requests.size());
+        assertEquals("http://localhost/data?graph=info%3A%2F%2Fobj-0",
+                requests.get(0).getURI().toString());
+        Assert.assertTrue(requests.get(0) instanceof HttpPut);
+    }
+
+    // also appended to by the indexer's own threads
+    private final List<HttpUriRequest> requests = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param body the body of every response, or null for none
+     * @return an indexer sending all requests through a mock HttpClient
+     */
+    private SparqlIndexer directIndexer(final String body) throws Exception {
+        final HttpClient client = Mockito.mock(HttpClient.class);
+        Mockito.when(client.execute(Mockito.any(HttpUriRequest.class)))
+                .thenAnswer(new Answer<HttpResponse>() {
+
+                    @Override
+                    public HttpResponse answer(final InvocationOnMock invocation)
+                        throws Exception {
+                        requests.add((HttpUriRequest) invocation.getArguments()[0]);
+                        final HttpResponse response =
+                            Mockito.mock(HttpResponse.class);
+                        final StatusLine status = Mockito.mock(StatusLine.class);
+                        Mockito.when(status.getStatusCode()).thenReturn(200);
+                        Mockito.when(response.getStatusLine()).thenReturn(status);
+                        if (body != null) {
+                            Mockito.when(response.getEntity()).thenReturn(
+                                    new StringEntity(body, "UTF-8"));
+                        }
+                        return response;
+                    }
+                });
+        final SparqlIndexer directIndexer = new SparqlIndexer();
+        directIndexer.setHttpClient(client);
+        directIndexer.setDirectHttp(true);
+        directIndexer.setQueryBase("http://localhost/query");
+        directIndexer.setUpdateBase("http://localhost/update");
+        return directIndexer;
+    }
+
+    private static Model objectModel() {
+        final Model model = ModelFactory.createDefaultModel();
+        model.add(model.createResource("info://obj-0"), model
+                .createProperty("info://p"), "o");
+        return model;
+    }
+
     @Mock
     private QueryEngineHTTP queryEngineHTTP;
 
     @Mock
     private UpdateRequest updateRequest;
 
+    /**
+     * Test extension of SparqlIndexer that records requests instead of
+     * executing them.
+     */
+    private static class RecordingSparqlIndexer extends SparqlIndexer {
+
+        private final List<UpdateRequest> executed = new ArrayList<>();
+
+        @Override
+        protected boolean execute(final UpdateRequest update) {
+            executed.add(update);
+            return true;
+        }
+    }
+
     /**
      * Test extension of SparqlIndexer to eliminate HTTP interactions.
      */
     private class MockSparqlIndexer extends SparqlIndexer {
 
+        @Override
+        protected boolean execute(final UpdateRequest update) {
+            return true;
+        }
+
         protected QueryEngineHTTP buildQueryEngineHTTP(String describeQuery) {
             Triple t0 = new Triple(createURI("info://sub"), createLiteral("p"), createURI("info://obj-0"));
             Triple t2 = new Triple(createURI("info://sub"), createLiteral("p"), createURI("info://obj-0/fcr:content"));
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.indexer.sparql;
+
+import static com.hp.hpl.jena.graph.Node.ANY;
+import static com.hp.hpl.jena.graph.NodeFactory.createURI;
+import static com.hp.hpl.jena.rdf.model.ModelFactory.createDefaultModel;
+import static com.hp.hpl.jena.update.UpdateFactory.create;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.sparql.modify.request.UpdateDataInsert;
+import com.hp.hpl.jena.update.Update;
+
+public class StreamingInsertTest {
+
+    @Test
+    public void testWritesParseableUpdate() throws IOException {
+        final Model model = createDefaultModel();
+        final Resource obj = model.createResource("info://obj-0");
+        model.add(obj, model.createProperty("info://p"), "a \"quoted\"\nvalue");
+        model.add(obj, model.createProperty("info://q"), model
+                .createResource("info://obj-1"));
+
+        final List<Update> ops =
+            write("DROP SILENT GRAPH <info://obj-0>", model,
+                    createURI("info://obj-0"));
+        assertEquals(2, ops.size());
+        final List<Quad> quads = ((UpdateDataInsert) ops.get(1)).getQuads();
+        assertEquals(2, quads.size());
+        for (final Quad q : quads) {
+            assertEquals(createURI("info://obj-0"), q.getGraph());
+            assertTrue(model.getGraph().contains(q.asTriple()));
+        }
+    }
+
+    @Test
+    public void testWritesDefaultGraphInsert() throws IOException {
+        final Model model = createDefaultModel();
+        model.add(model.createResource("info://obj-0"), model
+                .createProperty("info://p"), "value");
+        final List<Update> ops = write(null, model, null);
+        assertEquals(1, ops.size());
+        assertEquals(1, ((UpdateDataInsert) ops.get(0)).getQuads().size());
+    }
+
+    @Test
+    public void testWritesSameBodyAgain() throws IOException {
+        final Model model = createDefaultModel();
+        model.add(model.createResource("info://obj-0"), model
+                .createProperty("info://p"), "value");
+        final StreamingInsert insert =
+            new StreamingInsert("DELETE WHERE { <info://obj-0> ?p ?o }", model
+                    .getGraph(), null);
+        final ByteArrayOutputStream first = new ByteArrayOutputStream();
+        insert.writeTo(first);
+        // as when HttpClient retries the request
+        final ByteArrayOutputStream second = new ByteArrayOutputStream();
+        insert.writeTo(second);
+        assertEquals(first.toString("UTF-8"), second.toString("UTF-8"));
+        assertEquals(1, ((UpdateDataInsert) create(second.toString("UTF-8"))
+                .getOperations().get(1)).getQuads().size());
+    }
+
+    @Test
+    public void testWritesChunks() throws IOException {
+        final Model model = createDefaultModel();
+        final Resource obj = model.createResource("info://obj-0");
+        for (int i = 0; i < 5; i++) {
+            model.add(obj, model.createProperty("info://p"), "value " + i);
+        }
+        final Set<Triple> written = new HashSet<>();
+        for (int skip = 0; skip < 5; skip += 2) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new StreamingInsert(null, model.getGraph(), skip, 2, null)
+                    .writeTo(out);
+            final List<Quad> quads =
+                ((UpdateDataInsert) create(out.toString("UTF-8"))
+                        .getOperations().get(0)).getQuads();
+            assertEquals(skip < 4 ? 2 : 1, quads.size());
+            for (final Quad q : quads) {
+                written.add(q.asTriple());
+            }
+        }
+        assertEquals(model.getGraph().find(ANY, ANY, ANY)
+                .toSet(), written);
+    }
+
+    private static List<Update> write(final String prefix, final Model model,
+        final Node graph) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StreamingInsert(prefix, model.getGraph(), graph).writeTo(out);
+        return create(out.toString("UTF-8")).getOperations();
+    }
+}
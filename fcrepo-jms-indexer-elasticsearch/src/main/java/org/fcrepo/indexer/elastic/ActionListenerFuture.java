@@ -0,0 +1,57 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer.elastic;
+
+import java.util.concurrent.Semaphore;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionResponse;
+
+import com.google.common.util.concurrent.AbstractFuture;
+
+/**
+ * A {@link com.google.common.util.concurrent.ListenableFuture} completed
+ * directly by an Elasticsearch client callback, so that no thread waits for
+ * the response. A permit is returned to the supplied {@link Semaphore} when
+ * the response arrives.
+ *
+ * @param <T> the type of response expected
+ */
+public class ActionListenerFuture<T extends ActionResponse> extends
+    AbstractFuture<ActionResponse> implements ActionListener<T> {
+
+    private final Semaphore permits;
+
+    /**
+     * @param permits to which to return a permit on completion
+     */
+    public ActionListenerFuture(final Semaphore permits) {
+        this.permits = permits;
+    }
+
+    @Override
+    public void onResponse(final T response) {
+        permits.release();
+        set(response);
+    }
+
+    @Override
+    public void onFailure(final Throwable e) {
+        permits.release();
+        setException(e);
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer.elastic;
+
+import static com.google.common.util.concurrent.SettableFuture.create;
+import static java.util.Collections.disjoint;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.slf4j.Logger;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Gathers index and delete actions into bulk requests, sending a request
+ * when it reaches a number of actions or a size in bytes, or when a flush
+ * interval passes. A bounded number of bulk requests may be in flight at
+ * once; beyond that, callers wait. A request holding an action on a document
+ * that an earlier request still in flight also acts on waits for that request
+ * to complete, so the actions on each document are applied in the order they
+ * were added. The outcome of each action is reported through the future
+ * returned when it was added.
+ */
+public class BulkPipeline {
+
+    private static final Logger LOGGER = getLogger(BulkPipeline.class);
+
+    private final Client client;
+
+    private final int maxActions;
+
+    private final long maxBytes;
+
+    private final Semaphore inFlight;
+
+    private final ScheduledExecutorService scheduler =
+        newSingleThreadScheduledExecutor();
+
+    /**
+     * Held while a request is taken and sent, so that requests are sent in
+     * the order they were gathered.
+     */
+    private final Object sending = new Object();
+
+    /**
+     * Documents acted on by requests in flight.
+     */
+    private final Multiset<String> inFlightDocuments = HashMultiset.create();
+
+    private BulkRequest current = new BulkRequest();
+
+    private List<SettableFuture<ActionResponse>> futures = new ArrayList<>();
+
+    private List<String> documents = new ArrayList<>();
+
+    /**
+     * @param client
+     * @param maxActions the number of actions at which a request is sent
+     * @param maxBytes the estimated size in bytes at which a request is sent
+     * @param flushInterval milliseconds between sending of partial requests,
+     *        or 0 to send partial requests only when flushed explicitly
+     * @param concurrentRequests the number of bulk requests that may be in
+     *        flight at once
+     */
+    public BulkPipeline(final Client client, final int maxActions,
+        final long maxBytes, final long flushInterval,
+        final int concurrentRequests) {
+        if (flushInterval < 0) {
+            throw new IllegalArgumentException(
+                    "Flush interval must not be negative: " + flushInterval);
+        }
+        this.client = client;
+        this.maxActions = maxActions;
+        this.maxBytes = maxBytes;
+        this.inFlight = new Semaphore(concurrentRequests);
+        if (flushInterval > 0) {
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, flushInterval, flushInterval, MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param request
+     * @return the outcome of the action
+     */
+    public ListenableFuture<ActionResponse> add(final IndexRequest request) {
+        final SettableFuture<ActionResponse> future = create();
+        final boolean full;
+        synchronized (this) {
+            current.add(request);
+            futures.add(future);
+            documents.add(document(request.index(), request.type(), request
+                    .id()));
+            full = isFull();
+        }
+        if (full) {
+            flush();
+        }
+        return future;
+    }
+
+    /**
+     * @param request
+     * @return the outcome of the action
+     */
+    public ListenableFuture<ActionResponse> add(final DeleteRequest request) {
+        final SettableFuture<ActionResponse> future = create();
+        final boolean full;
+        synchronized (this) {
+            current.add(request);
+            futures.add(future);
+            documents.add(document(request.index(), request.type(), request
+                    .id()));
+            full = isFull();
+        }
+        if (full) {
+            flush();
+        }
+        return future;
+    }
+
+    private static String document(final String index, final String type,
+        final String id) {
+        return index + "/" + type + "/" + id;
+    }
+
+    private boolean isFull() {
+        return current.numberOfActions() >= maxActions
+                || current.estimatedSizeInBytes() >= maxBytes;
+    }
+
+    /**
+     * Send any waiting actions.
+     */
+    public void flush() {
+        synchronized (sending) {
+            final BulkRequest request;
+            final List<SettableFuture<ActionResponse>> requestFutures;
+            final List<String> requestDocuments;
+            synchronized (this) {
+                if (current.numberOfActions() == 0) {
+                    return;
+                }
+                request = current;
+                requestFutures = futures;
+                requestDocuments = documents;
+                current = new BulkRequest();
+                futures = new ArrayList<>();
+                documents = new ArrayList<>();
+            }
+            try {
+                awaitDocuments(requestDocuments);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(requestFutures, e);
+                return;
+            }
+            try {
+                inFlight.acquire();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                completed(requestDocuments);
+                fail(requestFutures, e);
+                return;
+            }
+            send(request, requestFutures, requestDocuments);
+        }
+    }
+
+    /**
+     * Wait until no request in flight acts on any of these documents, then
+     * record them as in flight.
+     */
+    private void awaitDocuments(final List<String> requestDocuments)
+        throws InterruptedException {
+        synchronized (inFlightDocuments) {
+            while (!disjoint(inFlightDocuments.elementSet(), requestDocuments)) {
+                inFlightDocuments.wait();
+            }
+            inFlightDocuments.addAll(requestDocuments);
+        }
+    }
+
+    private void completed(final List<String> requestDocuments) {
+        synchronized (inFlightDocuments) {
+            for (final String document : requestDocuments) {
+                inFlightDocuments.remove(document);
+            }
+            inFlightDocuments.notifyAll();
+        }
+    }
+
+    private void send(final BulkRequest request,
+        final List<SettableFuture<ActionResponse>> requestFutures,
+        final List<String> requestDocuments) {
+        LOGGER.debug("Sending bulk request of {} actions.", request
+                .numberOfActions());
+        try {
+            client.bulk(request, new ActionListener<BulkResponse>() {
+
+                @Override
+                public void onResponse(final BulkResponse response) {
+                    inFlight.release();
+                    completed(requestDocuments);
+                    for (final BulkItemResponse item : response.getItems()) {
+                        final SettableFuture<ActionResponse> future =
+                            requestFutures.get(item.getItemId());
+                        if (item.isFailed()) {
+                            LOGGER.error("Bulk action failed for {}: {}",
+                                    item.getId(), item.getFailureMessage());
+                            future.setException(new IOException(
+                                    "Bulk action failed for " + item.getId()
+                                            + ": " + item.getFailureMessage()));
+                        } else {
+                            future.set(item.<ActionResponse> getResponse());
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(final Throwable e) {
+                    inFlight.release();
+                    completed(requestDocuments);
+                    LOGGER.error("Bulk request failed: {}", e);
+                    fail(requestFutures, e);
+                }
+            });
+        } catch (final RuntimeException e) {
+            inFlight.release();
+            completed(requestDocuments);
+            fail(requestFutures, e);
+        }
+    }
+
+    private static void fail(final List<SettableFuture<ActionResponse>> fs,
+        final Throwable e) {
+        for (final SettableFuture<ActionResponse> f : fs) {
+            f.setException(e);
+        }
+    }
+
+    /**
+     * @return the number of bulk requests that may yet be sent without
+     *         waiting
+     */
+    public int availableRequests() {
+        return inFlight.availablePermits();
+    }
+
+    /**
+     * Send any waiting actions and stop the flush timer.
+     */
+    public void close() {
+        scheduler.shutdown();
+        flush();
+    }
+}
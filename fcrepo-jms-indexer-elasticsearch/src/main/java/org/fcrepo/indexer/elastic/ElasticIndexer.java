@@ -16,22 +16,38 @@
 
 package org.fcrepo.indexer.elastic;
 
+import static com.google.common.util.concurrent.Futures.allAsList;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
 import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
 import static java.util.concurrent.Executors.newFixedThreadPool;
 import static org.fcrepo.indexer.Indexer.IndexerType.NAMEDFIELDS;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
 import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.Client;
 import org.fcrepo.indexer.AsynchIndexer;
+import org.fcrepo.indexer.BatchIndexer;
 import org.fcrepo.indexer.NamedFields;
 import org.slf4j.Logger;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
 /**
@@ -40,7 +56,8 @@ import com.google.common.util.concurrent.ListeningExecutorService;
  * @author ajs6f
  * @date Dec 14, 2013
  */
-public class ElasticIndexer extends AsynchIndexer<NamedFields, ActionResponse> {
+public class ElasticIndexer extends AsynchIndexer<NamedFields, ActionResponse>
+    implements BatchIndexer<NamedFields> {
 
     @Inject
     private Client client;
@@ -55,6 +72,47 @@ public class ElasticIndexer extends AsynchIndexer<NamedFields, ActionResponse> {
      */
     private String indexName;
 
+    /**
+     * Whether single updates and removals should travel through the bulk
+     * pipeline.
+     */
+    private boolean bulkIndexing = false;
+
+    /**
+     * Number of actions at which a bulk request is sent.
+     */
+    private int bulkActions = 1000;
+
+    /**
+     * Estimated size in bytes at which a bulk request is sent.
+     */
+    private long bulkSize = 5 * 1024 * 1024;
+
+    /**
+     * Milliseconds after which a partial bulk request is sent.
+     */
+    private long flushInterval = 1000;
+
+    /**
+     * Number of bulk requests that may be in flight at once.
+     */
+    private int concurrentRequests = 1;
+
+    private BulkPipeline pipeline;
+
+    /**
+     * Whether single updates and removals should be completed by client
+     * callbacks instead of by waiting pool threads.
+     */
+    private boolean asynchronous = false;
+
+    /**
+     * Default number of asynchronous requests that may be in flight at once.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 50;
+
+    private volatile Semaphore inFlight = new Semaphore(DEFAULT_MAX_IN_FLIGHT);
+
     private static final Logger LOGGER = getLogger(ElasticIndexer.class);
 
 
@@ -74,6 +132,127 @@ public class ElasticIndexer extends AsynchIndexer<NamedFields, ActionResponse> {
                 .execute().actionGet();
     }
 
+    /**
+     * Sends any waiting bulk actions.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (pipeline != null) {
+            pipeline.close();
+            pipeline = null;
+        }
+    }
+
+    private synchronized BulkPipeline pipeline() {
+        if (pipeline == null) {
+            pipeline =
+                new BulkPipeline(client, bulkActions, bulkSize,
+                        flushInterval, concurrentRequests);
+        }
+        return pipeline;
+    }
+
+    private IndexRequest indexRequest(final String id,
+        final NamedFields content) {
+        return new IndexRequest(getIndexName(), getSearchIndexType(), id)
+                .source(Collections.<String, Object> unmodifiableMap(content));
+    }
+
+    private DeleteRequest deleteRequest(final String id) {
+        return new DeleteRequest(getIndexName(), getSearchIndexType(), id);
+    }
+
+    @Override
+    public ListenableFuture<ActionResponse> update(final String id,
+        final NamedFields content) throws IOException {
+        if (bulkIndexing) {
+            return pipeline().add(indexRequest(id, content));
+        }
+        if (asynchronous) {
+            final ActionListenerFuture<IndexResponse> result =
+                new ActionListenerFuture<>(acquire());
+            try {
+                client.index(indexRequest(id, content), result);
+            } catch (final RuntimeException e) {
+                result.onFailure(e);
+            }
+            return result;
+        }
+        return super.update(id, content);
+    }
+
+    @Override
+    public ListenableFuture<ActionResponse> remove(final String id)
+        throws IOException {
+        if (bulkIndexing) {
+            return pipeline().add(deleteRequest(id));
+        }
+        if (asynchronous) {
+            final ActionListenerFuture<DeleteResponse> result =
+                new ActionListenerFuture<>(acquire());
+            try {
+                client.delete(deleteRequest(id), result);
+            } catch (final RuntimeException e) {
+                result.onFailure(e);
+            }
+            return result;
+        }
+        return super.remove(id);
+    }
+
+    /**
+     * Waits for room for another asynchronous request.
+     *
+     * @return the semaphore from which a permit was taken
+     * @throws IOException if interrupted while waiting
+     */
+    private Semaphore acquire() throws IOException {
+        final Semaphore permits = inFlight;
+        try {
+            permits.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting to send request!", e);
+        }
+        return permits;
+    }
+
+    @Override
+    public ListenableFuture<List<ActionResponse>> updateAll(
+        final Map<String, NamedFields> contents) {
+        final BulkPipeline p = pipeline();
+        final List<ListenableFuture<ActionResponse>> results =
+            new ArrayList<>(contents.size());
+        for (final Map.Entry<String, NamedFields> entry : contents.entrySet()) {
+            results.add(p.add(indexRequest(entry.getKey(), entry.getValue())));
+        }
+        return allAsList(results);
+    }
+
+    @Override
+    public ListenableFuture<List<ActionResponse>> removeAll(
+        final Collection<String> ids) {
+        final BulkPipeline p = pipeline();
+        final List<ListenableFuture<ActionResponse>> results =
+            new ArrayList<>(ids.size());
+        for (final String id : ids) {
+            results.add(p.add(deleteRequest(id)));
+        }
+        return allAsList(results);
+    }
+
+    @Override
+    public ListenableFuture<?> flush() {
+        final BulkPipeline p;
+        synchronized (this) {
+            p = pipeline;
+        }
+        if (p != null) {
+            p.flush();
+        }
+        return immediateFuture(null);
+    }
+
     @Override
     public Callable<ActionResponse> removeSynch(final String id) {
         return new Callable<ActionResponse>() {
@@ -93,9 +272,7 @@ public class ElasticIndexer extends AsynchIndexer<NamedFields, ActionResponse> {
 
             @Override
             public ActionResponse call() {
-                return client.prepareIndex(indexName, searchIndexType, id)
-                        .execute().actionGet();
-
+                return client.index(indexRequest(id, content)).actionGet();
             }
         };
     }
@@ -133,6 +310,69 @@ public class ElasticIndexer extends AsynchIndexer<NamedFields, ActionResponse> {
     }
 
 
+    /**
+     * @param bulkIndexing whether single updates and removals should travel
+     *        through the bulk pipeline
+     */
+    public void setBulkIndexing(final boolean bulkIndexing) {
+        this.bulkIndexing = bulkIndexing;
+    }
+
+    /**
+     * @param bulkActions the number of actions at which a bulk request is sent
+     */
+    public void setBulkActions(final int bulkActions) {
+        this.bulkActions = bulkActions;
+    }
+
+    /**
+     * @param bulkSize the estimated size in bytes at which a bulk request is
+     *        sent
+     */
+    public void setBulkSize(final long bulkSize) {
+        this.bulkSize = bulkSize;
+    }
+
+    /**
+     * @param flushInterval milliseconds after which a partial bulk request is
+     *        sent, or 0 to send partial requests only on {@link #flush()}
+     */
+    public void setFlushInterval(final long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * @param concurrentRequests the number of bulk requests that may be in
+     *        flight at once
+     */
+    public void setConcurrentRequests(final int concurrentRequests) {
+        this.concurrentRequests = concurrentRequests;
+    }
+
+    /**
+     * @param asynchronous whether single updates and removals should be
+     *        completed by client callbacks instead of by waiting pool threads
+     */
+    public void setAsynchronous(final boolean asynchronous) {
+        this.asynchronous = asynchronous;
+    }
+
+    /**
+     * @param maxInFlight the number of asynchronous requests that may be in
+     *        flight at once
+     */
+    public void setMaxInFlight(final int maxInFlight) {
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * @return the number of asynchronous requests that may yet be sent
+     *         without waiting
+     */
+    public int getAvailableRequests() {
+        return inFlight.availablePermits();
+    }
+
     /**
      * @return the searchIndexType
      */
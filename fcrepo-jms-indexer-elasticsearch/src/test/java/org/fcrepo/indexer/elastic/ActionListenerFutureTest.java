@@ -0,0 +1,66 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.elasticsearch.action.index.IndexResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActionListenerFutureTest {
+
+    private Semaphore permits;
+
+    private ActionListenerFuture<IndexResponse> testFuture;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        permits = new Semaphore(1);
+        permits.acquire();
+        testFuture = new ActionListenerFuture<>(permits);
+    }
+
+    @Test
+    public void testResponseReleasesPermit() throws Exception {
+        final IndexResponse response = mock(IndexResponse.class);
+        testFuture.onResponse(response);
+        assertEquals(1, permits.availablePermits());
+        assertSame(response, testFuture.get());
+    }
+
+    @Test
+    public void testFailureReleasesPermit() throws InterruptedException {
+        final RuntimeException failure = new RuntimeException("refused");
+        testFuture.onFailure(failure);
+        assertEquals(1, permits.availablePermits());
+        assertTrue(testFuture.isDone());
+        try {
+            testFuture.get();
+        } catch (final ExecutionException e) {
+            assertSame(failure, e.getCause());
+            return;
+        }
+        throw new AssertionError("Failure was not reported!");
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class BulkPipelineTest {
+
+    @Mock
+    private Client mockClient;
+
+    private final List<ActionListener<BulkResponse>> listeners =
+        new CopyOnWriteArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() {
+        initMocks(this);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                listeners.add((ActionListener<BulkResponse>) invocation
+                        .getArguments()[1]);
+                return null;
+            }
+        }).when(mockClient).bulk(any(BulkRequest.class),
+                any(ActionListener.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeFlushInterval() {
+        new BulkPipeline(mockClient, 10, 1024 * 1024, -1, 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testNoFlushInterval() {
+        final BulkPipeline pipeline =
+            new BulkPipeline(mockClient, 10, 1024 * 1024, 0, 1);
+        pipeline.add(new DeleteRequest("index", "type", "a"));
+        verify(mockClient, never()).bulk(any(BulkRequest.class),
+                any(ActionListener.class));
+        pipeline.close();
+        verify(mockClient).bulk(any(BulkRequest.class),
+                any(ActionListener.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testOrderPerDocument() throws Exception {
+        final BulkPipeline pipeline =
+            new BulkPipeline(mockClient, 1, 1024 * 1024, 0, 2);
+        final ListenableFuture<ActionResponse> indexed =
+            pipeline.add(new IndexRequest("index", "type", "a").source("{}"));
+        assertEquals(1, listeners.size());
+
+        final Thread remover = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                pipeline.add(new DeleteRequest("index", "type", "a"));
+            }
+        });
+        remover.start();
+        remover.join(500);
+        // a request is free, but the removal waits for the indexing of "a"
+        assertTrue(remover.isAlive());
+        assertEquals(1, pipeline.availableRequests());
+        verify(mockClient, times(1)).bulk(any(BulkRequest.class),
+                any(ActionListener.class));
+
+        listeners.get(0).onResponse(response(0));
+        remover.join(5000);
+        assertFalse(remover.isAlive());
+        assertTrue(indexed.isDone());
+        verify(mockClient, times(2)).bulk(any(BulkRequest.class),
+                any(ActionListener.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testConcurrentDocuments() {
+        final BulkPipeline pipeline =
+            new BulkPipeline(mockClient, 1, 1024 * 1024, 0, 2);
+        pipeline.add(new DeleteRequest("index", "type", "a"));
+        pipeline.add(new DeleteRequest("index", "type", "b"));
+        // different documents travel in flight together
+        verify(mockClient, times(2)).bulk(any(BulkRequest.class),
+                any(ActionListener.class));
+        assertEquals(0, pipeline.availableRequests());
+    }
+
+    private static BulkResponse response(final int itemId) {
+        final BulkItemResponse item = mock(BulkItemResponse.class);
+        when(item.getItemId()).thenReturn(itemId);
+        final BulkResponse response = mock(BulkResponse.class);
+        when(response.getItems()).thenReturn(new BulkItemResponse[] {item});
+        return response;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.indexer.elastic;
+
+import static com.google.common.collect.ImmutableMap.of;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Client;
+import org.fcrepo.indexer.NamedFields;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class ElasticIndexerTest {
+
+    private static final long WAIT = 500;
+
+    @Mock
+    private Client mockClient;
+
+    @InjectMocks
+    private ElasticIndexer testIndexer = new ElasticIndexer();
+
+    private final List<ActionListener<IndexResponse>> listeners =
+        new CopyOnWriteArrayList<>();
+
+    private final NamedFields fields =
+        new NamedFields(of("title", (Collection<String>) asList("A")));
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        testIndexer.setIndexName("test");
+        testIndexer.setSearchIndexType("test");
+        testIndexer.setAsynchronous(true);
+        testIndexer.setMaxInFlight(1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void captureListeners() {
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                listeners.add((ActionListener<IndexResponse>) invocation
+                        .getArguments()[1]);
+                return null;
+            }
+        }).when(mockClient).index(any(IndexRequest.class),
+                any(ActionListener.class));
+    }
+
+    @Test
+    public void testAcquireBlocksAtLimit() throws Exception {
+        captureListeners();
+        final ListenableFuture<?> first = testIndexer.update("/a", fields);
+        assertEquals(0, testIndexer.getAvailableRequests());
+        final Thread caller = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    testIndexer.update("/b", fields);
+                } catch (final Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        caller.start();
+        caller.join(WAIT);
+        assertTrue("Request was sent beyond the limit!", caller.isAlive());
+        assertEquals(1, listeners.size());
+
+        listeners.get(0).onResponse(mock(IndexResponse.class));
+        caller.join(10 * WAIT);
+        assertFalse(caller.isAlive());
+        assertTrue(first.isDone());
+        assertEquals(2, listeners.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPermitReturnedWhenSendFails() throws Exception {
+        doThrow(new IllegalStateException("closed")).when(mockClient).index(
+                any(IndexRequest.class), any(ActionListener.class));
+        final ListenableFuture<?> result = testIndexer.update("/a", fields);
+        assertTrue(result.isDone());
+        assertEquals(1, testIndexer.getAvailableRequests());
+    }
+}
@@ -20,9 +20,11 @@ import static com.google.common.collect.ImmutableMap.of;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.concurrent.ExecutionException;
 
 import javax.inject.Inject;
 
@@ -66,6 +68,53 @@ public class ElasticIndexerIT {
         assertEquals("Didn't find our resource indexed!", id, response.getId());
     }
 
+    @Test
+    public void testBulkAddition() throws IOException, InterruptedException,
+        ExecutionException {
+        final String id1 = "testBulkAddition1";
+        final String id2 = "testBulkAddition2";
+        testIndexer.updateAll(
+                of(id1, new NamedFields(of("id", (Collection<String>) asList(id1))),
+                   id2, new NamedFields(of("id", (Collection<String>) asList(id2)))))
+                .get();
+        testIndexer.removeAll(asList(id2)).get();
+        final GetResponse response =
+            client.prepareGet(testIndexer.getIndexName(),
+                    testIndexer.getSearchIndexType(), id1).execute().actionGet();
+        assertTrue("Didn't find our resource indexed!", response.isExists());
+        assertEquals("Didn't find our fields indexed!", asList(id1), response
+                .getSource().get("id"));
+        assertFalse("Record existed when it should have been deleted!", client
+                .prepareGet(testIndexer.getIndexName(),
+                        testIndexer.getSearchIndexType(), id2).execute()
+                .actionGet().isExists());
+    }
+
+    @Test
+    public void testAsynchronousAddition() throws IOException,
+        InterruptedException, ExecutionException {
+        final String id = "testAsynchronousAddition";
+        testIndexer.setAsynchronous(true);
+        try {
+            testIndexer.update(id,
+                    new NamedFields(of("id", (Collection<String>) asList(id))))
+                    .get();
+            assertEquals(ElasticIndexer.DEFAULT_MAX_IN_FLIGHT, testIndexer
+                    .getAvailableRequests());
+            assertTrue("Didn't find our resource indexed!", client.prepareGet(
+                    testIndexer.getIndexName(),
+                    testIndexer.getSearchIndexType(), id).execute()
+                    .actionGet().isExists());
+            testIndexer.remove(id).get();
+        } finally {
+            testIndexer.setAsynchronous(false);
+        }
+        assertFalse("Record existed when it should have been deleted!", client
+                .prepareGet(testIndexer.getIndexName(),
+                        testIndexer.getSearchIndexType(), id).execute()
+                .actionGet().isExists());
+    }
+
     @Test
     public void testRemoval() throws IOException {
         final String id = "testRemoval";